@@ -14,14 +14,18 @@
 
 package com.yqman.wdiget;
 
+import com.yqman.wdiget.util.BitmapTransformPipeline;
+import com.yqman.wdiget.util.CircleCropCache;
+import com.yqman.wdiget.util.DrawableFactory;
+import com.yqman.wdiget.util.TransformChain;
+
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
-import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
-import android.graphics.Rect;
+import android.graphics.Shader;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.support.v7.widget.AppCompatImageView;
@@ -29,9 +33,14 @@ import android.util.AttributeSet;
 
 /**
  * 圆形ImageView
+ * 原图通过BitmapShader直接绘制到圆形上，缩放、居中裁剪由shader的矩阵完成，绘制过程中不会创建任何中间Bitmap
  */
 public class CircleImageView extends AppCompatImageView {
-    private Bitmap localBitmap; //存储计算好的圆形图标,否则每次计算会占用大量内存
+    private final Paint mBitmapPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final Matrix mShaderMatrix = new Matrix();
+    // 当前shader使用的原图，原图或者View的尺寸变化时才重新计算矩阵
+    private Bitmap mShaderBitmap;
+    private boolean mIsShaderMatrixDirty;
 
     public CircleImageView(Context context) {
         super(context);
@@ -63,16 +72,34 @@ public class CircleImageView extends AppCompatImageView {
         if (null == b) {
             return;
         }
-        if (b == localBitmap) { //即图片信息没有变化则直接绘制存储的图片即可，内存优化部分
-            canvas.drawBitmap(localBitmap, 0, 0, null);
-            return;
+        if (b != mShaderBitmap) { //图片变化时才重新创建shader
+            mShaderBitmap = b;
+            mBitmapPaint.setShader(new BitmapShader(b, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+            mIsShaderMatrixDirty = true;
+        }
+        int w = getWidth(); //圆形的直径
+        if (mIsShaderMatrixDirty) {
+            updateShaderMatrix(b, w);
+            mIsShaderMatrixDirty = false;
         }
-        Bitmap bitmap = b.copy(Bitmap.Config.ARGB_8888, true);
-        int w = getWidth();
-        Bitmap roundBitmap = getCroppedBitmap(bitmap, w);
-        canvas.drawBitmap(roundBitmap, 0, 0, null);
-        localBitmap = roundBitmap;
-        setImageBitmap(localBitmap);
+        canvas.drawCircle(w / 2f, w / 2f, w / 2f, mBitmapPaint);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mIsShaderMatrixDirty = true;
+    }
+
+    /**
+     * 等比例缩放到短边等于直径，居中裁剪，效果与{@link #getCroppedBitmap(Bitmap, int)}相同
+     */
+    private void updateShaderMatrix(Bitmap bitmap, int diameter) {
+        float scale = Math.max(diameter / (float) bitmap.getWidth(), diameter / (float) bitmap.getHeight());
+        mShaderMatrix.setScale(scale, scale);
+        mShaderMatrix.postTranslate((diameter - bitmap.getWidth() * scale) / 2f,
+                (diameter - bitmap.getHeight() * scale) / 2f);
+        mBitmapPaint.getShader().setLocalMatrix(mShaderMatrix);
     }
 
     /**
@@ -81,63 +108,31 @@ public class CircleImageView extends AppCompatImageView {
      * @param bmp    初始Bitmap对象
      * @param radius 圆形图片直径大小
      *
-     * @return 返回一个圆形的缩放裁剪过后的Bitmap对象
+     * @return 返回一个圆形的缩放裁剪过后的Bitmap对象，由调用方独占，可以修改或者回收
      */
     public Bitmap getCroppedBitmap(Bitmap bmp, int radius) {
-        Bitmap sourceBitmap;
-        if (bmp.getWidth() != radius || bmp.getHeight() != radius) {
-            bmp = getTrimBitmap(bmp, radius, radius);
-            sourceBitmap = Bitmap.createScaledBitmap(bmp, radius, radius, false);
-            /* 这个方法很酷炫，你可以忽略bmp的大小，然后给定后面的width和height系统就会返回你想要的大小的bitmap
-             * 底层是通过对图片进行拉伸处理，因此如果原图和目标图形比例差距过大容易导致图片变形。
-             * 注意：它不会裁剪只是拉伸,因此我们使用getTrimBitmqap进行了裁剪
-             * */
-        } else {
-            sourceBitmap = bmp;
-        }
-        Bitmap output = Bitmap.createBitmap(sourceBitmap.getWidth(), sourceBitmap.getHeight(),
-                Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(output);
-
-        final Paint paint = new Paint();
-        final Rect rect = new Rect(0, 0, sourceBitmap.getWidth(), sourceBitmap.getHeight());//sbmp是预期大小的Bitmap
-
-        paint.setAntiAlias(true); //消除锯齿
-        paint.setFilterBitmap(true); //对位图进行滤波处理
-
-        paint.setDither(true);
-        paint.setColor(Color.parseColor("#BAB399")); //画笔的颜色
-
-        canvas.drawARGB(0, 0, 0, 0);//alpha无色透明
-        canvas.drawCircle(sourceBitmap.getWidth() / 2 + 0.7f,
-                sourceBitmap.getHeight() / 2 + 0.7f, sourceBitmap.getWidth() / 2 + 0.1f, paint);//x、y坐标 半径 画笔
+        return CircleCropCache.getInstance(getContext()).copyCroppedBitmap(bmp, radius);
+    }
 
-        //核心部分，设置两张图片的相交模式，在这里就是上面绘制的Circle和下面绘制的Bitmap
-        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));//混合模式
-        canvas.drawBitmap(sourceBitmap, rect, rect, paint);
-        return output;
+    /**
+     * 与{@link #getCroppedBitmap(Bitmap, int)}相同，但结果缓存在{@link CircleCropCache}中，与{@link DrawableFactory}共用，
+     * 同一张图片同样的直径只计算一次
+     *
+     * @return 返回的Bitmap对象会被多处共用，不能修改或者回收
+     */
+    public Bitmap getCachedCroppedBitmap(Bitmap bmp, int radius) {
+        return CircleCropCache.getInstance(getContext()).getCroppedBitmap(bmp, radius);
     }
 
     /**
-     * 对bitmap进行裁剪操作
+     * 在{@link BitmapTransformPipeline}的后台线程中执行{@link #getCroppedBitmap(Bitmap, int)}，结果在主线程回调
+     * 同一张图片同样的直径同时只计算一次，结果会被多处共用，不能修改或者回收；原图在回调前不能被修改或者回收
+     *
+     * @return 可以用来取消的请求，取消后不会再回调
      */
-    private Bitmap getTrimBitmap(Bitmap bitmap, int width, int height) {
-        int bt_height = bitmap.getHeight();
-        int bt_width = bitmap.getWidth();
-        int bt_widthStart = 0;
-        int bt_heightStart = 0;
-        float scale = (float) width / height;
-        float scaleTmp = (float) bt_width / bt_height;
-        if (scaleTmp > scale) {
-            int tmp = (int) (scale * bt_height);
-            bt_widthStart = (bt_width - tmp) / 2;
-            bt_width = tmp;
-        } else {
-            int tmp = (int) (bt_width / scale);
-            bt_heightStart = (bt_height - tmp) / 2;
-            bt_height = tmp;
-        }
-        bitmap = Bitmap.createBitmap(bitmap, bt_widthStart, bt_heightStart, bt_width, bt_height);
-        return bitmap;
+    public BitmapTransformPipeline.Request getCroppedBitmapAsync(Bitmap bmp, int radius,
+                                                                 BitmapTransformPipeline.Callback callback) {
+        return BitmapTransformPipeline.getInstance().submit(bmp,
+                new TransformChain.Builder().circleCrop(radius).build(), callback);
     }
-}
\ No newline at end of file
+}
@@ -37,15 +37,34 @@ import android.widget.FrameLayout;
 public class DatePickView extends FrameLayout {
     private static final String TAG = "DatePickView";
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy年MM月dd日", Locale.CHINA);
-    private ScrollPickView mYearSelection;
-    private ScrollPickView mMonthSelection;
-    private ScrollPickView mDayOfMonthSelection;
-    private int mEndYear;
-    private int mStartYear;
-    private int mEndMonth;
-    private int mStartMonth;
-    private int mEndDay;
-    private int mStartDay;
+    private static final int YEAR_WHEEL = 0;
+    private static final int MONTH_WHEEL = 1;
+    private static final int DAY_WHEEL = 2;
+    private static final int MIN_YEAR = 1970;
+    private static final int MAX_YEAR = 2100;
+    // 所有实例共用同一组Formatter，开启图集模式时相同范围的滚轮可以共用图集
+    private static final ScrollPickView.Formatter YEAR_FORMATTER = new ScrollPickView.Formatter() {
+        @Override
+        public String getFormatString(int value) {
+            return value + "年";
+        }
+    };
+    private static final ScrollPickView.Formatter MONTH_FORMATTER = new ScrollPickView.Formatter() {
+        @Override
+        public String getFormatString(int value) {
+            return value + "月";
+        }
+    };
+    private static final ScrollPickView.Formatter DAY_FORMATTER = new ScrollPickView.Formatter() {
+        @Override
+        public String getFormatString(int value) {
+            return value + "日";
+        }
+    };
+    // 年、月、日三列在同一个View中绘制
+    private MultiWheelPickView mWheels;
+    // 未设置起止时间时只限制年份范围
+    private DateRangeTable mRangeTable = DateRangeTable.ofYears(MIN_YEAR, MAX_YEAR);
     private boolean mIsLimitedDate = false;
 
     public DatePickView(@NonNull Context context) {
@@ -67,43 +86,20 @@ public class DatePickView extends FrameLayout {
     }
 
     private void initView(View contentView) {
-        mYearSelection = (ScrollPickView) contentView.findViewById(R.id.year);
-        mYearSelection.setOnValueChangedListener(new ScrollPickView.OnValueChangedListener() {
-            @Override
-            public void onValueChange(int value) {
-                refreshDate();
-            }
-        });
-        mYearSelection.setFormatter(new ScrollPickView.Formatter() {
-            @Override
-            public String getFormatString(int value) {
-                return value + "年";
-            }
-        });
-        mMonthSelection = (ScrollPickView) contentView.findViewById(R.id.month);
-        mMonthSelection.setOnValueChangedListener(new ScrollPickView.OnValueChangedListener() {
+        mWheels = (MultiWheelPickView) contentView.findViewById(R.id.wheels);
+        mWheels.setWheelCount(3);
+        mWheels.setFormatter(YEAR_WHEEL, YEAR_FORMATTER);
+        mWheels.setFormatter(MONTH_WHEEL, MONTH_FORMATTER);
+        mWheels.setFormatter(DAY_WHEEL, DAY_FORMATTER);
+        mWheels.setValueRange(YEAR_WHEEL, MIN_YEAR, MAX_YEAR);
+        mWheels.setValueRange(MONTH_WHEEL, 1, 12);
+        mWheels.setValueRange(DAY_WHEEL, 1, 31);
+        mWheels.setOnWheelChangedListener(new MultiWheelPickView.OnWheelChangedListener() {
             @Override
-            public void onValueChange(int value) {
-                refreshDate();
-            }
-        });
-        mMonthSelection.setFormatter(new ScrollPickView.Formatter() {
-            @Override
-            public String getFormatString(int value) {
-                return value + "月";
-            }
-        });
-        mDayOfMonthSelection = (ScrollPickView) contentView.findViewById(R.id.dayOfMonth);
-        mDayOfMonthSelection.setOnValueChangedListener(new ScrollPickView.OnValueChangedListener() {
-            @Override
-            public void onValueChange(int value) {
-
-            }
-        });
-        mDayOfMonthSelection.setFormatter(new ScrollPickView.Formatter() {
-            @Override
-            public String getFormatString(int value) {
-                return value + "日";
+            public void onWheelChanged(int wheelIndex, int value) {
+                if (wheelIndex != DAY_WHEEL) {
+                    refreshDate();
+                }
             }
         });
     }
@@ -113,10 +109,12 @@ public class DatePickView extends FrameLayout {
         int year = calendar.get(Calendar.YEAR);
         int month = calendar.get(Calendar.MONTH) + 1;
         int day = calendar.get(Calendar.DAY_OF_MONTH);
-        mYearSelection.setInitValue(year);
-        mMonthSelection.setInitValue(month); // Calendar.MONTH 从0开始；
-        mDayOfMonthSelection.setValueRange(1, getMaxDay());
-        mDayOfMonthSelection.setInitValue(day);
+        mWheels.beginUpdate();
+        mWheels.setValue(YEAR_WHEEL, year);
+        mWheels.setValue(MONTH_WHEEL, month); // Calendar.MONTH 从0开始；
+        mWheels.setValueRange(DAY_WHEEL, 1, getMaxDay());
+        mWheels.setValue(DAY_WHEEL, day);
+        mWheels.commitUpdate();
     }
 
     @Override
@@ -127,19 +125,21 @@ public class DatePickView extends FrameLayout {
         }
         SavedState savedState = (SavedState) state;
         super.onRestoreInstanceState(savedState.getSuperState());
-        mYearSelection.setInitValue(savedState.mYear);
-        mMonthSelection.setInitValue(savedState.mMonth);
-        mDayOfMonthSelection.setValueRange(1, getMaxDay());
-        mDayOfMonthSelection.setInitValue(savedState.mDay);
+        mWheels.beginUpdate();
+        mWheels.setValue(YEAR_WHEEL, savedState.mYear);
+        mWheels.setValue(MONTH_WHEEL, savedState.mMonth);
+        mWheels.setValueRange(DAY_WHEEL, 1, getMaxDay());
+        mWheels.setValue(DAY_WHEEL, savedState.mDay);
+        mWheels.commitUpdate();
     }
 
     @Override
     protected Parcelable onSaveInstanceState() {
         Parcelable parcelable = super.onSaveInstanceState();
         SavedState savedState = new SavedState(parcelable);
-        savedState.mYear = mYearSelection.getValue();
-        savedState.mMonth = mMonthSelection.getValue();
-        savedState.mDay = mDayOfMonthSelection.getValue();
+        savedState.mYear = getYear();
+        savedState.mMonth = getMonth();
+        savedState.mDay = getDayOfMonth();
         return savedState;
     }
 
@@ -150,125 +150,110 @@ public class DatePickView extends FrameLayout {
         if (startCalendar.getTime().getTime() > endCalendar.getTime().getTime()) {
             return;
         }
-        mStartDay = startCalendar.get(Calendar.DAY_OF_MONTH);
-        mStartMonth = startCalendar.get(Calendar.MONTH) + 1;
-        mStartYear = startCalendar.get(Calendar.YEAR);
-
-        mEndDay = endCalendar.get(Calendar.DAY_OF_MONTH);
-        mEndMonth = endCalendar.get(Calendar.MONTH) + 1;
-        mEndYear = endCalendar.get(Calendar.YEAR);
-        mYearSelection.setValueRange(mStartYear, mEndYear);
+        mRangeTable = new DateRangeTable(startCalendar.get(Calendar.YEAR),
+                startCalendar.get(Calendar.MONTH) + 1, startCalendar.get(Calendar.DAY_OF_MONTH),
+                endCalendar.get(Calendar.YEAR),
+                endCalendar.get(Calendar.MONTH) + 1, endCalendar.get(Calendar.DAY_OF_MONTH));
         mIsLimitedDate = true;
+        mWheels.beginUpdate();
+        mWheels.setValueRange(YEAR_WHEEL, mRangeTable.getStartYear(), mRangeTable.getEndYear());
         refreshDate(); // 手动触发一下日期控件的刷新显示范围
+        mWheels.commitUpdate();
     }
 
+    /**
+     * 设置当前日期，超出可选范围时取最接近的有效日期
+     * 先一次性算出最终的年月日以及月、日两列的范围，再在一次批量更新中写入，只重绘一次
+     */
     public void setDate(Calendar calendar) {
-        if (mIsLimitedDate) { // 手动触发一下日期控件的刷新显示范围
-            refreshDate();
-        }
-
-        mYearSelection.setInitValue(calendar.get(Calendar.YEAR));
-        if (mIsLimitedDate) {  // setInit 方法不会触发监听器，所以需要手动触发一下日期控件的刷新显示范围
-            refreshDate();
-        }
-
-        mMonthSelection.setInitValue(calendar.get(Calendar.MONTH) + 1); // Calendar.MONTH 从0开始；
-        if (mIsLimitedDate) { // setInit 方法不会触发监听器，所以需要手动触发一下日期控件的刷新显示范围
-            refreshDate();
-        }
-        mDayOfMonthSelection.setInitValue(calendar.get(Calendar.DAY_OF_MONTH));
+        int year = mRangeTable.clampYear(calendar.get(Calendar.YEAR));
+        int month = mRangeTable.clampMonth(year, calendar.get(Calendar.MONTH) + 1); // Calendar.MONTH 从0开始；
+        int minDay = mRangeTable.getMinDay(year, month);
+        int maxDay = mRangeTable.getMaxDay(year, month);
+        int day = Math.max(minDay, Math.min(maxDay, calendar.get(Calendar.DAY_OF_MONTH)));
+        mWheels.beginUpdate();
+        mWheels.setValue(YEAR_WHEEL, year);
+        mWheels.setValueRange(MONTH_WHEEL, mRangeTable.getMinMonth(year), mRangeTable.getMaxMonth(year));
+        mWheels.setValue(MONTH_WHEEL, month);
+        mWheels.setValueRange(DAY_WHEEL, minDay, maxDay);
+        mWheels.setValue(DAY_WHEEL, day);
+        mWheels.commitUpdate();
     }
 
     public void enableLoopDisplay() {
-        mYearSelection.turnOnLoop();
-        mMonthSelection.turnOnLoop();
-        mDayOfMonthSelection.turnOnLoop();
+        mWheels.beginUpdate();
+        mWheels.setLoop(YEAR_WHEEL, true);
+        mWheels.setLoop(MONTH_WHEEL, true);
+        mWheels.setLoop(DAY_WHEEL, true);
+        mWheels.commitUpdate();
     }
 
     public void disableLoopDisplay() {
-        mYearSelection.turnOffLoop();
-        mMonthSelection.turnOffLoop();
-        mDayOfMonthSelection.turnOffLoop();
+        mWheels.beginUpdate();
+        mWheels.setLoop(YEAR_WHEEL, false);
+        mWheels.setLoop(MONTH_WHEEL, false);
+        mWheels.setLoop(DAY_WHEEL, false);
+        mWheels.commitUpdate();
     }
 
     public int getYear() {
-        return mYearSelection.getValue();
+        return mWheels.getValue(YEAR_WHEEL);
     }
 
     /**
      * 从1开始
      */
     public int getMonth() {
-        return mMonthSelection.getValue();
+        return mWheels.getValue(MONTH_WHEEL);
     }
 
     /**
      * 从1开始
      */
     public int getDayOfMonth() {
-        return mDayOfMonthSelection.getValue();
+        return mWheels.getValue(DAY_WHEEL);
     }
 
     public Calendar getDate() {
         Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.YEAR, mYearSelection.getValue());
-        calendar.set(Calendar.MONTH, mMonthSelection.getValue() - 1);
-        calendar.set(Calendar.DAY_OF_MONTH, mDayOfMonthSelection.getValue());
+        calendar.set(Calendar.YEAR, getYear());
+        calendar.set(Calendar.MONTH, getMonth() - 1);
+        calendar.set(Calendar.DAY_OF_MONTH, getDayOfMonth());
         return calendar;
     }
 
     /**
      * 设置月日的显示范围，在设置了起止时间的时候起作用
+     * 所有修改放在一次批量更新中，只重绘一次
      */
     private void refreshDate() {
-        if (!mIsLimitedDate) { // 正常显示
-            mMonthSelection.setValueRange(1, 12);
-            mDayOfMonthSelection.setValueRange(1, getMaxDay());
-            return;
-        }
-        if (mYearSelection.getValue() <= mStartYear) { // 到达开始日期
-            if (mYearSelection.getValue() < mStartYear) {
-                mYearSelection.setInitValue(mStartYear);
-            }
-            mMonthSelection.setValueRange(mStartMonth, 12);
-            if (mMonthSelection.getValue() <= mStartMonth) {
-                if (mMonthSelection.getValue() < mStartMonth) { // 未知错误修正
-                    mMonthSelection.setInitValue(mStartMonth);
-                }
-                mDayOfMonthSelection.setValueRange(mStartDay, getMaxDay());
-            } else {
-                mDayOfMonthSelection.setValueRange(1, getMaxDay());
-            }
-            return;
-        }
-        if (mYearSelection.getValue() >= mEndYear) { // 到达截止日期
-            if (mYearSelection.getValue() > mEndYear) {
-                mYearSelection.setInitValue(mEndYear);
-            }
-            mMonthSelection.setValueRange(1, mEndMonth);
-            if (mMonthSelection.getValue() >= mEndMonth) {
-                if (mMonthSelection.getValue() > mEndMonth) {  // 未知错误修正
-                    mMonthSelection.setInitValue(mEndMonth);
-                }
-                mDayOfMonthSelection.setValueRange(1, mEndDay);
-            } else {
-                mDayOfMonthSelection.setValueRange(1, getMaxDay());
+        mWheels.beginUpdate();
+        updateDateRange();
+        mWheels.commitUpdate();
+    }
+
+    private void updateDateRange() {
+        int year = getYear();
+        if (mIsLimitedDate) {
+            int clampedYear = mRangeTable.clampYear(year);
+            if (clampedYear != year) {
+                mWheels.setValue(YEAR_WHEEL, clampedYear);
+                year = clampedYear;
             }
-            return;
         }
-        mMonthSelection.setValueRange(1, 12);
-        mDayOfMonthSelection.setValueRange(1, getMaxDay());
+        // 月份范围收窄时滚轮会把当前值修正到范围内，再按修正后的月份计算日期范围
+        mWheels.setValueRange(MONTH_WHEEL, mRangeTable.getMinMonth(year), mRangeTable.getMaxMonth(year));
+        int month = getMonth();
+        mWheels.setValueRange(DAY_WHEEL, mRangeTable.getMinDay(year, month), mRangeTable.getMaxDay(year, month));
     }
 
+    /**
+     * 当前年月的天数，查表得到，不创建Calendar
+     */
     private int getMaxDay() {
-        int year = mYearSelection.getValue();
-        int month = mMonthSelection.getValue();
-        Calendar calendar = Calendar.getInstance();
-        calendar.set(year, month - 1, 1);
-        return calendar.getActualMaximum(Calendar.DATE);
+        return mRangeTable.getDaysInMonth(getYear(), getMonth());
     }
 
-
     private static class SavedState extends BaseSavedState {
         private int mYear;
         private int mMonth;
@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+/**
+ * {@link DatePickView}使用的日期范围表，不可变
+ * 创建时用纯整数运算预先算好起止年份之间每个月的天数，之后查询某年可选的月份范围、某月可选的日期范围都是O(1)，
+ * 不再创建Calendar；不依赖Android，可以直接在JVM上做单元测试
+ * 月份从1开始
+ */
+final class DateRangeTable {
+    private static final int MONTH_COUNT = 12;
+    private static final byte[] DAYS_OF_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private final int mStartYear;
+    private final int mStartMonth;
+    private final int mStartDay;
+    private final int mEndYear;
+    private final int mEndMonth;
+    private final int mEndDay;
+    // 下标为 (year - mStartYear) * 12 + (month - 1)
+    private final byte[] mDaysInMonth;
+
+    /**
+     * @param startYear 开始日期，包含
+     * @param endYear 结束日期，包含，不能早于开始日期
+     */
+    DateRangeTable(int startYear, int startMonth, int startDay, int endYear, int endMonth, int endDay) {
+        if (startYear > endYear || (startYear == endYear && (startMonth > endMonth
+                || (startMonth == endMonth && startDay > endDay)))) {
+            throw new IllegalArgumentException("start date is after end date");
+        }
+        mStartYear = startYear;
+        mStartMonth = startMonth;
+        mStartDay = startDay;
+        mEndYear = endYear;
+        mEndMonth = endMonth;
+        mEndDay = endDay;
+        mDaysInMonth = new byte[(endYear - startYear + 1) * MONTH_COUNT];
+        for (int year = startYear; year <= endYear; year++) {
+            for (int month = 1; month <= MONTH_COUNT; month++) {
+                mDaysInMonth[(year - startYear) * MONTH_COUNT + month - 1] = (byte) computeDaysInMonth(year, month);
+            }
+        }
+    }
+
+    /**
+     * 不限制月日，只限制年份的范围
+     */
+    static DateRangeTable ofYears(int startYear, int endYear) {
+        return new DateRangeTable(startYear, 1, 1, endYear, MONTH_COUNT, 31);
+    }
+
+    /**
+     * 公历闰年规则
+     */
+    static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    static int computeDaysInMonth(int year, int month) {
+        if (month == 2 && isLeapYear(year)) {
+            return 29;
+        }
+        return DAYS_OF_MONTH[month - 1];
+    }
+
+    int getStartYear() {
+        return mStartYear;
+    }
+
+    int getEndYear() {
+        return mEndYear;
+    }
+
+    /**
+     * 把年份限制在范围内
+     */
+    int clampYear(int year) {
+        if (year < mStartYear) {
+            return mStartYear;
+        }
+        return year > mEndYear ? mEndYear : year;
+    }
+
+    /**
+     * 把月份限制在某一年可选的范围内
+     */
+    int clampMonth(int year, int month) {
+        int min = getMinMonth(year);
+        if (month < min) {
+            return min;
+        }
+        int max = getMaxMonth(year);
+        return month > max ? max : month;
+    }
+
+    int getMinMonth(int year) {
+        return year <= mStartYear ? mStartMonth : 1;
+    }
+
+    int getMaxMonth(int year) {
+        return year >= mEndYear ? mEndMonth : MONTH_COUNT;
+    }
+
+    int getMinDay(int year, int month) {
+        return (year <= mStartYear && month <= mStartMonth) ? mStartDay : 1;
+    }
+
+    int getMaxDay(int year, int month) {
+        if (year >= mEndYear && month >= mEndMonth) {
+            return Math.min(mEndDay, getDaysInMonth(year, month));
+        }
+        return getDaysInMonth(year, month);
+    }
+
+    /**
+     * @return 某年某月的天数，范围外的年份直接计算
+     */
+    int getDaysInMonth(int year, int month) {
+        if (year < mStartYear || year > mEndYear) {
+            return computeDaysInMonth(year, month);
+        }
+        return mDaysInMonth[(year - mStartYear) * MONTH_COUNT + month - 1];
+    }
+}
@@ -21,9 +21,11 @@ import android.arch.lifecycle.Lifecycle;
 import android.arch.lifecycle.LifecycleOwner;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.os.Handler;
 import android.os.Message;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.view.PagerAdapter;
 import android.support.v4.view.ViewPager;
 import android.util.AttributeSet;
@@ -129,9 +131,32 @@ public class HorizontalScrollPage extends FrameLayout implements GenericLifecycl
         }
     }
 
-    private void updateImageViewResource(ImageView imageView, int pos) {
-        if (mImageLoader != null) {
-            mImageLoader.updateImageView(imageView, mImageResource.get(pos % mImageResource.size()));
+    private void updateImageViewResource(final ImageView imageView, int pos) {
+        if (mImageLoader == null) {
+            return;
+        }
+        final String url = mImageResource.get(pos % mImageResource.size());
+        if (imageView instanceof ZoomImageView && mImageLoader instanceof TieredImageLoader) {
+            // 支持放缩时分级加载，不需要等原图加载完成才显示
+            final TieredImageLoader loader = (TieredImageLoader) mImageLoader;
+            ((ZoomImageView) imageView).setTieredSource(new ZoomImageView.TieredSource() {
+                @Override
+                public Bitmap loadThumbnail() {
+                    return loader.loadThumbnail(url);
+                }
+
+                @Override
+                public String loadImageFile() {
+                    return loader.loadImageFile(url);
+                }
+
+                @Override
+                public void onLoadFailed() {
+                    loader.updateImageView(imageView, url);
+                }
+            });
+        } else {
+            mImageLoader.updateImageView(imageView, url);
         }
     }
 
@@ -226,6 +251,9 @@ public class HorizontalScrollPage extends FrameLayout implements GenericLifecycl
 
         @Override
         public void destroyItem(@NonNull ViewGroup container, int position, @NonNull Object object) {
+            if (object instanceof ZoomImageView) {
+                ((ZoomImageView) object).cancelTieredLoad(); // 页面已经销毁，不再需要还未完成的加载
+            }
             if (object instanceof View) {
                 container.removeView((View) object);
             }
@@ -319,4 +347,23 @@ public class HorizontalScrollPage extends FrameLayout implements GenericLifecycl
     public interface ImageLoader {
         void updateImageView(ImageView imageView, String url);
     }
+
+    /**
+     * 支持分级加载的图片加载库，开启放缩时先显示缩略图，再显示原图，原图加载失败或者无法分块显示时才回退到{@link #updateImageView}
+     * 两个方法都在后台线程中调用
+     */
+    public interface TieredImageLoader extends ImageLoader {
+        /**
+         * @return 缩略图，一般来自列表页的缓存；没有时返回null
+         */
+        @Nullable
+        Bitmap loadThumbnail(String url);
+
+        /**
+         * 页面销毁时线程会被中断
+         * @return 下载后原图的本地文件路径；失败时返回null
+         */
+        @Nullable
+        String loadImageFile(String url);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,212 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.support.annotation.Nullable;
+
+/**
+ * 滚轮显示文字的位图图集
+ * 以最大字体把每个数值的文字预先绘制到一张ALPHA_8位图中，绘制时按比例缩放贴图即可，颜色由绘制时的Paint决定；
+ * 相同配置（屏幕密度、字体缩放和语言）、Formatter、数值范围和字体大小的滚轮共用同一个图集，
+ * 配置改变后按新的key重新生成，旧的图集在所有使用者释放后回收
+ * 所有方法都只能在主线程调用
+ */
+class LabelAtlas {
+    // 数值个数超过该值不生成图集，避免位图过大
+    static final int MAX_LABEL_COUNT = 400;
+    // 宽高都不超过较老设备上GL纹理的最大尺寸，超过时硬件加速下什么都画不出来
+    private static final int MAX_ATLAS_WIDTH = 2048;
+    private static final int MAX_ATLAS_HEIGHT = 2048;
+    private static final HashMap<Key, LabelAtlas> ATLASES = new HashMap<>();
+
+    private final Key mKey;
+    private final Bitmap mBitmap;
+    private final int mColumnCount;
+    private final int mCellWidth;
+    private final int mCellHeight;
+    // 基线到单元格顶部的距离
+    private final float mBaseline;
+    private final float[] mLabelWidths;
+    private final Rect mSrcRect = new Rect();
+    private final RectF mDstRect = new RectF();
+    private int mRefCount;
+
+    private LabelAtlas(Key key, Paint paint, String[] labels, float[] labelWidths, int columnCount, int cellWidth,
+                       int cellHeight, float baseline) {
+        mKey = key;
+        mLabelWidths = labelWidths;
+        mColumnCount = columnCount;
+        mCellWidth = cellWidth;
+        mCellHeight = cellHeight;
+        mBaseline = baseline;
+        int rowCount = (labels.length + columnCount - 1) / columnCount;
+        mBitmap = Bitmap.createBitmap(columnCount * cellWidth, rowCount * cellHeight, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(mBitmap);
+        for (int i = 0; i < labels.length; i++) {
+            canvas.drawText(labels[i], (i % columnCount) * cellWidth, (i / columnCount) * cellHeight + baseline, paint);
+        }
+    }
+
+    /**
+     * 测量所有文字并排列成行列，宽或者高超过上限时返回null
+     */
+    @Nullable
+    private static LabelAtlas create(Key key, ScrollPickView.Formatter formatter) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(key.mTextSize);
+        paint.setTextAlign(Paint.Align.LEFT);
+        Paint.FontMetricsInt fontMetrics = paint.getFontMetricsInt();
+        int count = key.mMaxValue - key.mMinValue + 1;
+        String[] labels = new String[count];
+        float[] labelWidths = new float[count];
+        float maxWidth = 1;
+        for (int i = 0; i < count; i++) {
+            labels[i] = formatter.getFormatString(key.mMinValue + i);
+            labelWidths[i] = paint.measureText(labels[i]);
+            maxWidth = Math.max(maxWidth, labelWidths[i]);
+        }
+        int cellWidth = (int) Math.ceil(maxWidth) + 1;
+        int cellHeight = fontMetrics.bottom - fontMetrics.top + 1;
+        int columnCount = Math.max(1, Math.min(count, MAX_ATLAS_WIDTH / cellWidth));
+        int rowCount = (count + columnCount - 1) / columnCount;
+        if (columnCount * cellWidth > MAX_ATLAS_WIDTH || (long) rowCount * cellHeight > MAX_ATLAS_HEIGHT) {
+            return null;
+        }
+        return new LabelAtlas(key, paint, labels, labelWidths, columnCount, cellWidth, cellHeight,
+                -fontMetrics.top);
+    }
+
+    /**
+     * 获取一个图集，不再使用时需要调用{@link #release()}
+     * @return 数值范围过大、图集超过最大尺寸或者参数无效时返回null，调用方应该退回到drawText
+     */
+    @Nullable
+    static LabelAtlas acquire(Resources resources, ScrollPickView.Formatter formatter, int minValue, int maxValue,
+                              int textSize) {
+        if (textSize <= 0 || maxValue < minValue || maxValue - minValue + 1 > MAX_LABEL_COUNT) {
+            return null;
+        }
+        Key key = new Key(resources, formatter, minValue, maxValue, textSize);
+        LabelAtlas atlas = ATLASES.get(key);
+        if (atlas == null) {
+            atlas = create(key, formatter);
+            if (atlas == null) {
+                return null;
+            }
+            ATLASES.put(key, atlas);
+        }
+        atlas.mRefCount++;
+        return atlas;
+    }
+
+    void release() {
+        mRefCount--;
+        if (mRefCount > 0) {
+            return;
+        }
+        if (ATLASES.get(mKey) == this) {
+            ATLASES.remove(mKey);
+        }
+        mBitmap.recycle();
+    }
+
+    /**
+     * @return 配置改变后或者参数不同时返回false，需要重新获取
+     */
+    boolean matches(Resources resources, ScrollPickView.Formatter formatter, int minValue, int maxValue,
+                    int textSize) {
+        return mKey.equals(new Key(resources, formatter, minValue, maxValue, textSize));
+    }
+
+    /**
+     * 绘制一个数值
+     * @param centerX 文字水平中心
+     * @param baseline 缩放后文字的基线位置
+     * @param textSize 缩放后的字体大小
+     * @param paint 决定颜色和透明度
+     */
+    void draw(Canvas canvas, int value, float centerX, float baseline, float textSize, Paint paint) {
+        int index = value - mKey.mMinValue;
+        if (index < 0 || index >= mLabelWidths.length) {
+            return;
+        }
+        float scale = textSize / mKey.mTextSize;
+        int left = (index % mColumnCount) * mCellWidth;
+        int top = (index / mColumnCount) * mCellHeight;
+        float width = mLabelWidths[index];
+        mSrcRect.set(left, top, left + (int) Math.ceil(width), top + mCellHeight);
+        float dstWidth = mSrcRect.width() * scale;
+        float dstTop = baseline - mBaseline * scale;
+        mDstRect.set(centerX - width * scale / 2, dstTop, centerX - width * scale / 2 + dstWidth,
+                dstTop + mCellHeight * scale);
+        canvas.drawBitmap(mBitmap, mSrcRect, mDstRect, paint);
+    }
+
+    private static class Key {
+        private final int mDensityDpi;
+        private final float mFontScale;
+        // Formatter的结果可能与语言有关
+        private final Locale mLocale;
+        private final ScrollPickView.Formatter mFormatter;
+        private final int mMinValue;
+        private final int mMaxValue;
+        private final int mTextSize;
+
+        Key(Resources resources, ScrollPickView.Formatter formatter, int minValue, int maxValue, int textSize) {
+            mDensityDpi = resources.getDisplayMetrics().densityDpi;
+            mFontScale = resources.getConfiguration().fontScale;
+            mLocale = Locale.getDefault();
+            mFormatter = formatter;
+            mMinValue = minValue;
+            mMaxValue = maxValue;
+            mTextSize = textSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mDensityDpi == key.mDensityDpi && mFontScale == key.mFontScale && mLocale.equals(key.mLocale)
+                    && mFormatter == key.mFormatter && mMinValue == key.mMinValue && mMaxValue == key.mMaxValue
+                    && mTextSize == key.mTextSize;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mDensityDpi;
+            result = 31 * result + Float.floatToIntBits(mFontScale);
+            result = 31 * result + mLocale.hashCode();
+            result = 31 * result + System.identityHashCode(mFormatter);
+            result = 31 * result + mMinValue;
+            result = 31 * result + mMaxValue;
+            result = 31 * result + mTextSize;
+            return result;
+        }
+    }
+}
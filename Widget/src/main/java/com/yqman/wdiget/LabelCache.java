@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+/**
+ * 滚轮显示文字的缓存，以数值作为key
+ * 采用直接映射的固定大小数组，查询和写入都不会分配内存；滚轮上同时可见的数值是连续的，
+ * 只要可见行数不超过容量就不会互相覆盖
+ */
+class LabelCache {
+    private static final int DEFAULT_CAPACITY = 64; // 必须是2的幂
+
+    private final int mMask;
+    private final int[] mKeys;
+    private final String[] mLabels;
+    private int mMissCount;
+
+    LabelCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 缓存容量，必须是2的幂
+     */
+    LabelCache(int capacity) {
+        mMask = capacity - 1;
+        mKeys = new int[capacity];
+        mLabels = new String[capacity];
+    }
+
+    /**
+     * @return 缓存的文字，未命中返回null
+     */
+    String get(int key) {
+        int slot = key & mMask;
+        if (mLabels[slot] != null && mKeys[slot] == key) {
+            return mLabels[slot];
+        }
+        mMissCount++;
+        return null;
+    }
+
+    void put(int key, String label) {
+        int slot = key & mMask;
+        mKeys[slot] = key;
+        mLabels[slot] = label;
+    }
+
+    /**
+     * 格式化方式或者数值范围改变后调用
+     */
+    void clear() {
+        for (int i = 0; i < mLabels.length; i++) {
+            mLabels[i] = null;
+        }
+    }
+
+    /**
+     * 未命中的次数，每一次未命中都意味着调用方需要重新生成一个字符串
+     */
+    int getMissCount() {
+        return mMissCount;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * {@link ZoomImageView}使用的多级缩小图
+ * 第i级的宽高是原图的1/2^i，每一级都由上一级缩小一半得到（双线性过滤，相当于2x2取平均），缩小显示时不会出现锯齿，
+ * 也不需要每一帧都上传、采样整张原图
+ * 各级在第一次需要时才在后台线程生成，生成完成前使用已有的更清晰的一级；除了后台生成以外的方法都只能在主线程调用
+ */
+class MipmapPyramid {
+    private static final String TAG = "MipmapPyramid";
+    // 最多生成的级数，不包括原图
+    private static final int MAX_LEVEL = 4;
+    // 缩小后的宽或高小于该值时不再继续生成
+    private static final int MIN_LEVEL_SIZE = 64;
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    // 所有实例共用，空闲时线程会退出
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final Bitmap mSource;
+    private final Runnable mOnLevelReady;
+    // 下标为级数，第0级是原图
+    private final Bitmap[] mLevels = new Bitmap[MAX_LEVEL + 1];
+    private final int mMaxLevel;
+    // 已经提交给后台生成的最大级数
+    private int mRequestedLevel;
+    // 只在后台线程中使用：已经生成的最大级数及其位图
+    private int mGeneratedLevel;
+    private Bitmap mGeneratedBitmap;
+    private volatile boolean mIsReleased;
+
+    /**
+     * @param onLevelReady 有新的一级生成完成时在主线程回调
+     */
+    MipmapPyramid(Bitmap source, Runnable onLevelReady) {
+        mSource = source;
+        mOnLevelReady = onLevelReady;
+        mLevels[0] = source;
+        mGeneratedBitmap = source;
+        int level = 0;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        while (level < MAX_LEVEL && width / 2 >= MIN_LEVEL_SIZE && height / 2 >= MIN_LEVEL_SIZE) {
+            width /= 2;
+            height /= 2;
+            level++;
+        }
+        mMaxLevel = level;
+    }
+
+    Bitmap getSource() {
+        return mSource;
+    }
+
+    /**
+     * 返回最适合当前缩放比例的一级：缩放后每个像素不小于屏幕上的一个像素的最小一级
+     * 该级还未生成时开始生成，并返回已有的最接近的更清晰的一级
+     * @param ratio 原图到View的缩放比例
+     */
+    Bitmap getLevel(float ratio) {
+        int level = getLevelIndex(ratio);
+        if (level > mRequestedLevel) {
+            requestLevels(level);
+        }
+        while (mLevels[level] == null) {
+            level--;
+        }
+        return mLevels[level];
+    }
+
+    /**
+     * 最适合当前缩放比例的级数，不考虑该级是否已经生成
+     */
+    int getLevelIndex(float ratio) {
+        int level = 0;
+        while (level < mMaxLevel && (1 << (level + 1)) * ratio <= 1) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 不再使用时调用，之后生成的结果都会被丢弃；原图不会被回收
+     */
+    void release() {
+        mIsReleased = true;
+        for (int i = 1; i <= MAX_LEVEL; i++) {
+            mLevels[i] = null;
+        }
+    }
+
+    /**
+     * 依次生成到targetLevel为止还没有的各级，每完成一级就回调一次
+     * 后台线程只有一个，任务按提交顺序执行，因此可以接着上一次生成的结果继续缩小
+     */
+    private void requestLevels(final int targetLevel) {
+        mRequestedLevel = targetLevel;
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (mGeneratedLevel < targetLevel) {
+                    if (mIsReleased || mGeneratedBitmap.isRecycled()) { // 原图可能已经被外部回收
+                        return;
+                    }
+                    Bitmap previous = mGeneratedBitmap;
+                    final Bitmap scaled;
+                    try {
+                        scaled = Bitmap.createScaledBitmap(previous, Math.max(1, previous.getWidth() / 2),
+                                Math.max(1, previous.getHeight() / 2), true);
+                    } catch (OutOfMemoryError e) {
+                        Log.w(TAG, "create level " + (mGeneratedLevel + 1) + " failed", e);
+                        return;
+                    }
+                    mGeneratedLevel++;
+                    mGeneratedBitmap = scaled;
+                    final int readyLevel = mGeneratedLevel;
+                    MAIN_HANDLER.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (mIsReleased) {
+                                return;
+                            }
+                            mLevels[readyLevel] = scaled;
+                            mOnLevelReady.run();
+                        }
+                    });
+                }
+            }
+        });
+    }
+}
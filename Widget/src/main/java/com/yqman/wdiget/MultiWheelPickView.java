@@ -0,0 +1,742 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.view.ViewCompat;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+
+/**
+ * 在一个View中绘制多列滚轮，用于日期等多个联动的选择器
+ * 各列等宽，共用Paint、字体大小表、背景层和速度计算器，所有列的惯性滚动由同一个帧回调推进；
+ * 多列的范围和数值修改可以放在{@link #beginUpdate()}和{@link #commitUpdate()}之间一次性生效
+ */
+public class MultiWheelPickView extends View {
+    private static final String TAG = "MultiWheelPickView";
+    private static final int DEFAULT_OFFSET = 2;
+    private static final int DEFAULT_WHEEL_COUNT = 1;
+    private static final float ITEM_HEIGHT_DP = 35;
+    // 相对于itemHeight对应的最大字体大小
+    private static final float LARGE_TEXT_SIZE_RELATIVE_ITEM_HEIGHT = (4 / 5f);
+    // 相对于LargeTextSize对应的最小字体大小
+    private static final float SMALL_TEXT_SIZE_RELATIVE_LARGE_TEXT = (3 / 5f);
+    // 每一列的最大字体长度
+    private static final int MAX_FONT_LENGTH = 5;
+    private static final ScrollPickView.Formatter DEFAULT_FORMATTER = new ScrollPickView.Formatter() {
+        @Override
+        public String getFormatString(int value) {
+            return String.valueOf(value);
+        }
+    };
+
+    private int mSelectedItemTextColor;
+    private int mNormalItemTextColor;
+    private int mOffset;
+
+    // onSizeChanged里面算出来的 以px为单位
+    private float mTotalHeightPx;
+    private float mHalfTotalHeightPx;
+    private float mColumnWidthPx;
+    private float mItemHeightPx;
+    private float mOffsetItemHeightPx;
+    private float mLargeTextSizePx;
+
+    private Wheel[] mWheels = new Wheel[0];
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final PickChrome mChrome = new PickChrome();
+    private final TextSizeTable mTextSizeTable = new TextSizeTable();
+    private int mTextSizeLevel = -1;
+    private boolean mIsLabelAtlasEnabled;
+    private PickVelocityTracker mVelocityTracker = new PickVelocityTracker();
+    private int mMinFlingVelocity;
+    private int mMaxFlingVelocity;
+    // 当前正在被拖动的列，-1表示没有
+    private int mTouchWheel = -1;
+    private float mLastY;
+    private OnWheelChangedListener mOnWheelChangedListener;
+
+    // 所有列共用的帧回调
+    private final Runnable mScrollFrameCallback = new Runnable() {
+        @Override
+        public void run() {
+            onScrollFrame();
+        }
+    };
+    private boolean mIsScrollFramePending;
+    // beginUpdate的嵌套层数，大于0时修改不触发重绘
+    private int mUpdateDepth;
+    private boolean mIsInvalidateDeferred;
+
+    public MultiWheelPickView(Context context) {
+        this(context, null);
+    }
+
+    public MultiWheelPickView(Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public MultiWheelPickView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.MultiWheelPickView, defStyleAttr, 0);
+        mOffset = a.getInteger(R.styleable.MultiWheelPickView_yqman_widget_scroll_pick_item_offset, DEFAULT_OFFSET);
+        mSelectedItemTextColor = a.getColor(
+                R.styleable.MultiWheelPickView_yqman_widget_scroll_pick_select_item_text_color,
+                getResources().getColor(R.color.yqman_widget_scroll_pick_selected_item_text));
+        mNormalItemTextColor = a.getColor(
+                R.styleable.MultiWheelPickView_yqman_widget_scroll_pick_normal_item_text_color,
+                getResources().getColor(R.color.yqman_widget_scroll_pick_normal_item_text));
+        int selectBackgroundColor = a.getColor(
+                R.styleable.MultiWheelPickView_yqman_widget_scroll_pick_select_background_color,
+                getResources().getColor(R.color.yqman_widget_scroll_pick_selected_background_color));
+        int normalBackgroundColor = a.getColor(
+                R.styleable.MultiWheelPickView_yqman_widget_scroll_pick_normal_background_color,
+                getResources().getColor(R.color.yqman_widget_scroll_pick_normal_background_color));
+        int selectItemLineColor = a.getColor(
+                R.styleable.MultiWheelPickView_yqman_widget_scroll_pick_select_item_line_color,
+                getResources().getColor(R.color.yqman_widget_scroll_pick_selected_item_line_color));
+        int wheelCount = a.getInteger(R.styleable.MultiWheelPickView_yqman_widget_multi_wheel_count,
+                DEFAULT_WHEEL_COUNT);
+        a.recycle();
+        mChrome.setColors(normalBackgroundColor, selectBackgroundColor, selectItemLineColor);
+        mPaint.setStyle(Paint.Style.FILL);
+        mPaint.setTextAlign(Paint.Align.CENTER);
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+        setWheelCount(wheelCount);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int itemHeight = dip2px(ITEM_HEIGHT_DP);
+        int desiredHeight = itemHeight * (2 * mOffset + 1);
+        int desiredWidth = itemHeight * MAX_FONT_LENGTH * Math.max(1, mWheels.length);
+        setMeasuredDimension(resolveSize(desiredWidth, widthMeasureSpec),
+                resolveSize(desiredHeight, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateGeometry(w, h);
+    }
+
+    private void updateGeometry(int width, int height) {
+        if (width == 0 || height == 0 || mWheels.length == 0) {
+            return;
+        }
+        if (mItemHeightPx > 0) {
+            for (Wheel wheel : mWheels) {
+                wheel.mSelectedIndex = Math.round(wheel.mCurrentY / mItemHeightPx);
+            }
+        }
+        mTotalHeightPx = height;
+        mHalfTotalHeightPx = height / 2f;
+        mColumnWidthPx = width / (float) mWheels.length;
+        mItemHeightPx = mTotalHeightPx / (2 * mOffset + 1);
+        mOffsetItemHeightPx = mItemHeightPx * mOffset;
+        mLargeTextSizePx = Math.min(mItemHeightPx * LARGE_TEXT_SIZE_RELATIVE_ITEM_HEIGHT,
+                mColumnWidthPx / MAX_FONT_LENGTH);
+        if (mTextSizeTable.build(mPaint, mLargeTextSizePx * SMALL_TEXT_SIZE_RELATIVE_LARGE_TEXT,
+                mLargeTextSizePx)) {
+            mTextSizeLevel = -1;
+        }
+        float selectTop = mOffset * mItemHeightPx;
+        mChrome.setBounds(width, height, selectTop, selectTop + mItemHeightPx);
+        for (int i = 0; i < mWheels.length; i++) {
+            Wheel wheel = mWheels[i];
+            wheel.mCenterX = mColumnWidthPx * i + mColumnWidthPx / 2;
+            wheel.mScroller.abort();
+            wheel.mCurrentY = wheel.mSelectedIndex * mItemHeightPx; // 尺寸变化后按选中项重新定位
+            updateLabelAtlas(wheel);
+        }
+        requestInvalidate();
+    }
+
+    private int dip2px(float dpValue) {
+        final float scale = getContext().getResources().getDisplayMetrics().density;
+        return (int) (dpValue * scale + 0.5f);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mItemHeightPx == 0) {
+            return;
+        }
+        mChrome.draw(canvas);
+        for (Wheel wheel : mWheels) {
+            drawWheel(canvas, wheel);
+        }
+    }
+
+    private void drawWheel(Canvas canvas, Wheel wheel) {
+        int centerIndex = (int) Math.floor(wheel.mCurrentY / mItemHeightPx + 0.5f);
+        for (int index = centerIndex - mOffset - 1; index <= centerIndex + mOffset + 1; index++) {
+            if (wheel.isEmptyIndex(index)) {
+                continue;
+            }
+            float distance = index * mItemHeightPx - wheel.mCurrentY; // 相对于选中行的偏移
+            double scale = 1 - Math.min(Math.abs(distance), mOffsetItemHeightPx) / (mOffsetItemHeightPx + 0.1f);
+            int level = mTextSizeTable.getLevel(scale);
+            if (level != mTextSizeLevel) {
+                mTextSizeLevel = level;
+                mPaint.setTextSize(mTextSizeTable.getTextSize(level));
+            }
+            mPaint.setColor(index == centerIndex ? mSelectedItemTextColor : mNormalItemTextColor);
+            mPaint.setAlpha(translateToAlpha(scale));
+            float baseline = mHalfTotalHeightPx + distance + mTextSizeTable.getBaselineOffset(level);
+            int value = wheel.getIndexValue(index);
+            if (wheel.mLabelAtlas != null) {
+                wheel.mLabelAtlas.draw(canvas, value, wheel.mCenterX, baseline,
+                        mTextSizeTable.getTextSize(level), mPaint);
+            } else {
+                canvas.drawText(wheel.getLabel(value), wheel.mCenterX, baseline, mPaint);
+            }
+        }
+    }
+
+    /**
+     * 将大小伸缩比例转换成alpha值
+     * @param scale 0 ~ 1
+     * @return 0.5 ~ 1
+     */
+    private int translateToAlpha(double scale) {
+        float alpha;
+        if (scale > 1) {
+            alpha = 1;
+        } else if (scale < 0.5) {
+            alpha = 0.5f;
+        } else {
+            alpha = (float) scale;
+        }
+        return (int) (alpha * 255);
+    }
+
+    /**
+     * 设置列数，会清空所有列之前的设置
+     */
+    public void setWheelCount(int count) {
+        stopAllScroll();
+        for (Wheel wheel : mWheels) {
+            wheel.releaseLabelAtlas();
+        }
+        mWheels = new Wheel[Math.max(0, count)];
+        for (int i = 0; i < mWheels.length; i++) {
+            mWheels[i] = new Wheel(getContext());
+        }
+        mTouchWheel = -1;
+        requestLayout();
+        updateGeometry(getWidth(), getHeight());
+    }
+
+    public int getWheelCount() {
+        return mWheels.length;
+    }
+
+    /**
+     * 开始批量修改，直到对应的{@link #commitUpdate()}之前，各列的范围和数值修改都不会触发重绘
+     * 可以嵌套调用
+     */
+    public void beginUpdate() {
+        mUpdateDepth++;
+    }
+
+    /**
+     * 结束批量修改，最外层的commit统一重绘一次
+     */
+    public void commitUpdate() {
+        if (mUpdateDepth == 0) {
+            return;
+        }
+        mUpdateDepth--;
+        if (mUpdateDepth == 0 && mIsInvalidateDeferred) {
+            mIsInvalidateDeferred = false;
+            invalidate();
+        }
+    }
+
+    /**
+     * 设置某一列显示的起止数值，当前值超出范围时取最接近的边界值
+     */
+    public void setValueRange(int wheelIndex, int minValue, int maxValue) {
+        Wheel wheel = mWheels[wheelIndex];
+        if (minValue == wheel.mMinValue && maxValue == wheel.mMaxValue) {
+            return;
+        }
+        int value = wheel.getValue(mItemHeightPx);
+        wheel.mMinValue = minValue;
+        wheel.mMaxValue = maxValue;
+        wheel.mValueLength = maxValue - minValue + 1;
+        wheel.mLabelCache.clear();
+        updateLabelAtlas(wheel);
+        if (value < minValue) {
+            value = minValue;
+        } else if (value > maxValue) {
+            value = maxValue;
+        }
+        moveToValue(wheel, value);
+        requestInvalidate();
+    }
+
+    /**
+     * 设置某一列的当前值，不会回调监听器
+     */
+    public void setValue(int wheelIndex, int value) {
+        Wheel wheel = mWheels[wheelIndex];
+        if (value < wheel.mMinValue || value > wheel.mMaxValue) {
+            return;
+        }
+        if (wheel.mScroller.isFinished() && value == wheel.getValue(mItemHeightPx)) {
+            return;
+        }
+        moveToValue(wheel, value);
+        requestInvalidate();
+    }
+
+    public int getValue(int wheelIndex) {
+        return mWheels[wheelIndex].getValue(mItemHeightPx);
+    }
+
+    public int getMinValue(int wheelIndex) {
+        return mWheels[wheelIndex].mMinValue;
+    }
+
+    public int getMaxValue(int wheelIndex) {
+        return mWheels[wheelIndex].mMaxValue;
+    }
+
+    public void setFormatter(int wheelIndex, @NonNull ScrollPickView.Formatter formatter) {
+        Wheel wheel = mWheels[wheelIndex];
+        wheel.mFormatter = formatter;
+        wheel.mLabelCache.clear();
+        updateLabelAtlas(wheel);
+        requestInvalidate();
+    }
+
+    /**
+     * 设置某一列是否循环显示，默认不循环
+     */
+    public void setLoop(int wheelIndex, boolean loop) {
+        Wheel wheel = mWheels[wheelIndex];
+        if (wheel.mIsLoop == loop) {
+            return;
+        }
+        int value = wheel.getValue(mItemHeightPx);
+        wheel.mIsLoop = loop;
+        moveToValue(wheel, value);
+        requestInvalidate();
+    }
+
+    /**
+     * 开启图集模式，参见{@link ScrollPickView#setLabelAtlasEnabled(boolean)}，对所有列生效
+     */
+    public void setLabelAtlasEnabled(boolean enable) {
+        if (mIsLabelAtlasEnabled == enable) {
+            return;
+        }
+        mIsLabelAtlasEnabled = enable;
+        for (Wheel wheel : mWheels) {
+            updateLabelAtlas(wheel);
+        }
+        requestInvalidate();
+    }
+
+    public void setOnWheelChangedListener(OnWheelChangedListener listener) {
+        mOnWheelChangedListener = listener;
+    }
+
+    public void setVelocityTracker(@NonNull PickVelocityTracker velocityTracker) {
+        mVelocityTracker = velocityTracker;
+    }
+
+    @NonNull
+    public PickVelocityTracker getVelocityTracker() {
+        return mVelocityTracker;
+    }
+
+    private void moveToValue(Wheel wheel, int value) {
+        wheel.mScroller.abort();
+        wheel.mSelectedIndex = value - wheel.mMinValue;
+        wheel.mCurrentY = wheel.mSelectedIndex * mItemHeightPx;
+    }
+
+    private void requestInvalidate() {
+        if (mUpdateDepth > 0) {
+            mIsInvalidateDeferred = true;
+        } else {
+            invalidate();
+        }
+    }
+
+    private void updateLabelAtlas(Wheel wheel) {
+        int textSize = (int) mLargeTextSizePx;
+        if (!mIsLabelAtlasEnabled || textSize <= 0 || !ViewCompat.isAttachedToWindow(this)) {
+            wheel.releaseLabelAtlas();
+            return;
+        }
+        if (wheel.mLabelAtlas != null && wheel.mLabelAtlas.matches(getResources(), wheel.mFormatter,
+                wheel.mMinValue, wheel.mMaxValue, textSize)) {
+            return;
+        }
+        wheel.releaseLabelAtlas();
+        wheel.mLabelAtlas = LabelAtlas.acquire(getResources(), wheel.mFormatter, wheel.mMinValue, wheel.mMaxValue,
+                textSize);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                handleDown(event);
+                break;
+            case MotionEvent.ACTION_MOVE:
+                handleMove(event);
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                handleUp(event);
+                break;
+            default:
+                return super.onTouchEvent(event);
+        }
+        return true;
+    }
+
+    private void handleDown(MotionEvent e) {
+        if (mColumnWidthPx == 0) {
+            return;
+        }
+        mTouchWheel = Math.min(mWheels.length - 1, Math.max(0, (int) (e.getX() / mColumnWidthPx)));
+        mLastY = e.getY();
+        mVelocityTracker.clear();
+        mVelocityTracker.addMovement(e);
+        Wheel wheel = mWheels[mTouchWheel];
+        wheel.mScroller.abort(); // 只停止被按下的列，其他列继续滚动
+        wheel.wrapLoop(mItemHeightPx);
+    }
+
+    private void handleMove(MotionEvent e) {
+        if (mTouchWheel < 0) {
+            return;
+        }
+        mVelocityTracker.addMovement(e);
+        Wheel wheel = mWheels[mTouchWheel];
+        wheel.mCurrentY = wheel.clampY(wheel.mCurrentY + mLastY - e.getY(), mItemHeightPx);
+        mLastY = e.getY();
+        invalidate();
+    }
+
+    private void handleUp(MotionEvent e) {
+        if (mTouchWheel < 0) {
+            return;
+        }
+        mVelocityTracker.addMovement(e);
+        Wheel wheel = mWheels[mTouchWheel];
+        mTouchWheel = -1;
+        wheel.mScroller.setBounds(wheel.getMinY(), wheel.getMaxY(mItemHeightPx), mItemHeightPx);
+        // 手指向下滑动时mCurrentY减小，因此速度取反
+        wheel.mScroller.fling(wheel.mCurrentY, -mVelocityTracker.getYVelocity(mMaxFlingVelocity),
+                mMinFlingVelocity);
+        if (wheel.mScroller.isFinished()) {
+            wheel.mCurrentY = wheel.mScroller.getCurrY();
+            invalidate();
+            settleWheel(wheel);
+            return;
+        }
+        postScrollFrame();
+    }
+
+    private void postScrollFrame() {
+        if (!mIsScrollFramePending) {
+            mIsScrollFramePending = true;
+            ViewCompat.postOnAnimation(this, mScrollFrameCallback);
+        }
+    }
+
+    /**
+     * 每一帧推进所有正在滚动的列
+     */
+    private void onScrollFrame() {
+        mIsScrollFramePending = false;
+        boolean running = false;
+        for (Wheel wheel : mWheels) {
+            if (wheel.mScroller.isFinished()) {
+                continue;
+            }
+            boolean wheelRunning = wheel.mScroller.computeScrollOffset();
+            wheel.mCurrentY = wheel.mScroller.getCurrY();
+            if (wheelRunning) {
+                running = true;
+            } else {
+                settleWheel(wheel);
+            }
+        }
+        invalidate();
+        if (running) {
+            postScrollFrame();
+        }
+    }
+
+    /**
+     * 某一列停止滚动，回调监听器；监听器中可以修改其他列的范围
+     */
+    private void settleWheel(Wheel wheel) {
+        wheel.wrapLoop(mItemHeightPx);
+        wheel.mSelectedIndex = Math.round(wheel.mCurrentY / mItemHeightPx);
+        if (mOnWheelChangedListener != null) {
+            for (int i = 0; i < mWheels.length; i++) {
+                if (mWheels[i] == wheel) {
+                    mOnWheelChangedListener.onWheelChanged(i, wheel.getValue(mItemHeightPx));
+                    return;
+                }
+            }
+        }
+    }
+
+    private void stopAllScroll() {
+        for (Wheel wheel : mWheels) {
+            wheel.mScroller.abort();
+        }
+        if (mIsScrollFramePending) {
+            mIsScrollFramePending = false;
+            removeCallbacks(mScrollFrameCallback);
+        }
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        int count = mWheels.length;
+        state.mMinValues = new int[count];
+        state.mMaxValues = new int[count];
+        state.mValues = new int[count];
+        state.mIsLoops = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            Wheel wheel = mWheels[i];
+            state.mMinValues[i] = wheel.mMinValue;
+            state.mMaxValues[i] = wheel.mMaxValue;
+            state.mValues[i] = wheel.getValue(mItemHeightPx);
+            state.mIsLoops[i] = wheel.mIsLoop;
+        }
+        return state;
+    }
+
+    /**
+     * 恢复各列的范围、循环模式和当前值；Formatter无法保存，列数与保存时不同时不恢复
+     */
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        if (savedState.mValues.length != mWheels.length) {
+            return;
+        }
+        stopAllScroll(); // 横竖屏切换前停止动画
+        for (int i = 0; i < mWheels.length; i++) {
+            Wheel wheel = mWheels[i];
+            wheel.mMinValue = savedState.mMinValues[i];
+            wheel.mMaxValue = savedState.mMaxValues[i];
+            wheel.mValueLength = wheel.mMaxValue - wheel.mMinValue + 1;
+            wheel.mIsLoop = savedState.mIsLoops[i];
+            wheel.mLabelCache.clear();
+            updateLabelAtlas(wheel);
+            moveToValue(wheel, Math.max(wheel.mMinValue, Math.min(savedState.mValues[i], wheel.mMaxValue)));
+        }
+        requestInvalidate();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        for (Wheel wheel : mWheels) {
+            updateLabelAtlas(wheel);
+        }
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        for (Wheel wheel : mWheels) {
+            updateLabelAtlas(wheel); // 密度、字体缩放或者语言变化后换用新配置下的图集
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        stopAllScroll();
+        for (Wheel wheel : mWheels) {
+            if (mItemHeightPx > 0) {
+                wheel.mSelectedIndex = Math.round(wheel.mCurrentY / mItemHeightPx);
+            }
+            wheel.releaseLabelAtlas();
+        }
+        mChrome.release();
+    }
+
+    /**
+     * 某一列停止滚动后的回调
+     */
+    public interface OnWheelChangedListener {
+        /**
+         * @param wheelIndex 列的下标
+         * @param value 该列的新值
+         */
+        void onWheelChanged(int wheelIndex, int value);
+    }
+
+    private static class SavedState extends BaseSavedState {
+        // 每一列的起止数值、当前值和是否循环
+        private int[] mMinValues;
+        private int[] mMaxValues;
+        private int[] mValues;
+        private boolean[] mIsLoops;
+
+        SavedState(Parcel source) {
+            super(source);
+            mMinValues = source.createIntArray();
+            mMaxValues = source.createIntArray();
+            mValues = source.createIntArray();
+            mIsLoops = source.createBooleanArray();
+        }
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeIntArray(mMinValues);
+            out.writeIntArray(mMaxValues);
+            out.writeIntArray(mValues);
+            out.writeBooleanArray(mIsLoops);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel source) {
+                return new SavedState(source);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+    /**
+     * 单列的数据和滚动状态；第index项居中时mCurrentY = index * itemHeight
+     */
+    private static class Wheel {
+        private int mMinValue;
+        private int mMaxValue;
+        private int mValueLength = 1;
+        private boolean mIsLoop;
+        private ScrollPickView.Formatter mFormatter = DEFAULT_FORMATTER;
+        private final LabelCache mLabelCache = new LabelCache();
+        private LabelAtlas mLabelAtlas;
+        private final WheelScroller mScroller;
+        private float mCurrentY;
+        // 最近一次停止时的选中项，尚未完成测量时用于记录设置的值
+        private int mSelectedIndex;
+        private float mCenterX;
+
+        Wheel(Context context) {
+            mScroller = new WheelScroller(context);
+        }
+
+        int getValue(float itemHeight) {
+            int index = itemHeight > 0 ? Math.round(mCurrentY / itemHeight) : mSelectedIndex;
+            return getIndexValue(index);
+        }
+
+        int getIndexValue(int index) {
+            if (mValueLength <= 0) {
+                return mMinValue;
+            }
+            int offset = index % mValueLength;
+            if (offset < 0) {
+                offset += mValueLength;
+            }
+            return mMinValue + offset;
+        }
+
+        boolean isEmptyIndex(int index) {
+            if (mValueLength <= 0) {
+                return true;
+            }
+            return !mIsLoop && (index < 0 || index >= mValueLength);
+        }
+
+        String getLabel(int value) {
+            String label = mLabelCache.get(value);
+            if (label == null) {
+                label = mFormatter.getFormatString(value);
+                mLabelCache.put(value, label);
+            }
+            return label;
+        }
+
+        float getMinY() {
+            return mIsLoop ? -Float.MAX_VALUE : 0;
+        }
+
+        float getMaxY(float itemHeight) {
+            return mIsLoop ? Float.MAX_VALUE : (mValueLength - 1) * itemHeight;
+        }
+
+        float clampY(float y, float itemHeight) {
+            if (mIsLoop) {
+                return y;
+            }
+            return Math.max(0, Math.min(y, getMaxY(itemHeight)));
+        }
+
+        /**
+         * 循环模式下把mCurrentY平移整数个周期，显示内容不变
+         */
+        void wrapLoop(float itemHeight) {
+            if (mIsLoop && mValueLength > 0 && itemHeight > 0) {
+                float cycleHeight = mValueLength * itemHeight;
+                mCurrentY -= (float) Math.floor(mCurrentY / cycleHeight) * cycleHeight;
+            }
+        }
+
+        void releaseLabelAtlas() {
+            if (mLabelAtlas != null) {
+                mLabelAtlas.release();
+                mLabelAtlas = null;
+            }
+        }
+    }
+}
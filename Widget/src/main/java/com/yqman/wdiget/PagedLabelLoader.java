@@ -0,0 +1,177 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+/**
+ * 按页加载{@link PickDataSource}的显示文字
+ * 只在内存中保留最近使用的若干页，查询不分配内存；缺页时交给共享的后台线程加载，加载完成后在主线程回调
+ * 快速滚动时已经被淘汰的页不再加载；加载失败的页会释放槽位，下次查询时重新加载
+ * 除了后台加载以外的方法都只能在主线程调用
+ */
+class PagedLabelLoader {
+    private static final String TAG = "PagedLabelLoader";
+    static final int PAGE_SIZE = 50;
+    // 内存中最多保留的页数
+    private static final int MAX_PAGE_COUNT = 8;
+    // 距离页边界小于该值时预加载相邻的页
+    private static final int PREFETCH_DISTANCE = 10;
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    // 所有滚轮共用，空闲时线程会退出
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final PickDataSource mDataSource;
+    private final Runnable mOnPageLoaded;
+    private final int mCount;
+    // 每个槽位对应的页号，-1表示空闲
+    private final int[] mPageIndexes = new int[MAX_PAGE_COUNT];
+    private final String[][] mPages = new String[MAX_PAGE_COUNT][];
+    private final long[] mLastUsed = new long[MAX_PAGE_COUNT];
+    // 槽位每次被重新分配时加一，后台线程据此判断任务是否已经过期
+    private final AtomicIntegerArray mGenerations = new AtomicIntegerArray(MAX_PAGE_COUNT);
+    private long mUseCounter;
+    private volatile boolean mIsReleased;
+
+    /**
+     * @param onPageLoaded 有新的页加载完成时在主线程回调
+     */
+    PagedLabelLoader(PickDataSource dataSource, Runnable onPageLoaded) {
+        mDataSource = dataSource;
+        mOnPageLoaded = onPageLoaded;
+        mCount = dataSource.getCount();
+        for (int i = 0; i < MAX_PAGE_COUNT; i++) {
+            mPageIndexes[i] = -1;
+        }
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return 对应下标的显示文字，所在的页还未加载完成时返回null并开始加载
+     */
+    @Nullable
+    String getLabel(int index) {
+        if (index < 0 || index >= mCount) {
+            return null;
+        }
+        int page = index / PAGE_SIZE;
+        int slot = obtainSlot(page);
+        int offsetInPage = index - page * PAGE_SIZE;
+        if (offsetInPage < PREFETCH_DISTANCE && page > 0) {
+            obtainSlot(page - 1);
+        } else if (offsetInPage >= PAGE_SIZE - PREFETCH_DISTANCE && (page + 1) * PAGE_SIZE < mCount) {
+            obtainSlot(page + 1);
+        }
+        String[] labels = mPages[slot];
+        if (labels == null || offsetInPage >= labels.length) {
+            return null;
+        }
+        return labels[offsetInPage];
+    }
+
+    /**
+     * 数据源被替换或者View不再使用时调用，之后完成的加载结果都会被丢弃
+     */
+    void release() {
+        mIsReleased = true;
+    }
+
+    /**
+     * 找到页所在的槽位，不存在时淘汰最久未使用的槽位并开始加载
+     */
+    private int obtainSlot(int page) {
+        int oldestSlot = 0;
+        for (int i = 0; i < MAX_PAGE_COUNT; i++) {
+            if (mPageIndexes[i] == page) {
+                mLastUsed[i] = ++mUseCounter;
+                return i;
+            }
+            if (mLastUsed[i] < mLastUsed[oldestSlot]) {
+                oldestSlot = i;
+            }
+        }
+        mPageIndexes[oldestSlot] = page;
+        mPages[oldestSlot] = null;
+        mLastUsed[oldestSlot] = ++mUseCounter;
+        EXECUTOR.execute(new LoadTask(oldestSlot, mGenerations.incrementAndGet(oldestSlot), page));
+        return oldestSlot;
+    }
+
+    /**
+     * @param labels 加载失败时为null，释放槽位，不主动重绘，下一次绘制查询到该页时重新加载
+     */
+    private void onPageLoaded(int slot, int generation, String[] labels) {
+        if (mIsReleased || mGenerations.get(slot) != generation) { // 加载期间已经被淘汰
+            return;
+        }
+        if (labels == null) {
+            mPageIndexes[slot] = -1;
+            mLastUsed[slot] = 0;
+            mGenerations.incrementAndGet(slot);
+            return;
+        }
+        mPages[slot] = labels;
+        mOnPageLoaded.run();
+    }
+
+    private class LoadTask implements Runnable {
+        private final int mSlot;
+        private final int mGeneration;
+        private final int mPage;
+
+        LoadTask(int slot, int generation, int page) {
+            mSlot = slot;
+            mGeneration = generation;
+            mPage = page;
+        }
+
+        @Override
+        public void run() {
+            if (mIsReleased || mGenerations.get(mSlot) != mGeneration) { // 排队期间已经被淘汰
+                return;
+            }
+            int start = mPage * PAGE_SIZE;
+            String[] result = null;
+            try {
+                result = mDataSource.loadPage(start, Math.min(PAGE_SIZE, mCount - start));
+            } catch (RuntimeException | OutOfMemoryError e) {
+                Log.w(TAG, "load page " + mPage + " failed", e);
+            }
+            final String[] labels = result;
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    onPageLoaded(mSlot, mGeneration, labels);
+                }
+            });
+        }
+    }
+}
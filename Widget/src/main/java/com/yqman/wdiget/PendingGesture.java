@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+/**
+ * 一帧之内累积的手势变化，不依赖Android，可以直接在JVM上做单元测试
+ * 平移和以任意点为中心的缩放组合起来仍然是 x' = scale * x + offset 的形式，
+ * 因此无论这一帧内有多少个采样点，都只需要记录两个数，到下一帧时一次性作用到{@link ZoomTransform}上
+ */
+final class PendingGesture {
+    private float mScale = 1;
+    private float mOffsetX;
+    private float mOffsetY;
+    // 最近一次缩放的焦点，应用时以它为中心缩放
+    private float mFocusX;
+    private float mFocusY;
+    private boolean mIsEmpty = true;
+
+    boolean isEmpty() {
+        return mIsEmpty;
+    }
+
+    void reset() {
+        mScale = 1;
+        mOffsetX = 0;
+        mOffsetY = 0;
+        mIsEmpty = true;
+    }
+
+    void translate(float dx, float dy) {
+        mOffsetX += dx;
+        mOffsetY += dy;
+        mIsEmpty = false;
+    }
+
+    /**
+     * 以屏幕上的焦点为中心缩放
+     */
+    void zoom(float scale, float focusX, float focusY) {
+        mScale *= scale;
+        mOffsetX = mOffsetX * scale + focusX * (1 - scale);
+        mOffsetY = mOffsetY * scale + focusY * (1 - scale);
+        mFocusX = focusX;
+        mFocusY = focusY;
+        mIsEmpty = false;
+    }
+
+    /**
+     * 把累积的变化作用到transform上并清空：先以最近的焦点为中心缩放，剩下的部分作为平移，
+     * 缩放比例超出范围时由transform限制
+     * @param maxOverscroll 平移时允许越过边界的最大距离
+     */
+    void applyTo(ZoomTransform transform, float maxOverscroll) {
+        if (mIsEmpty) {
+            return;
+        }
+        float dx = mOffsetX;
+        float dy = mOffsetY;
+        if (mScale != 1) {
+            transform.zoomBy(mScale, mFocusX, mFocusY);
+            dx -= mFocusX * (1 - mScale);
+            dy -= mFocusY * (1 - mScale);
+        }
+        if (dx != 0 || dy != 0) {
+            transform.translateBy(dx, dy, maxOverscroll);
+        }
+        reset();
+    }
+}
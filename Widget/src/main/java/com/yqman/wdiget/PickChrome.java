@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.os.Build;
+
+/**
+ * 滚轮的静态背景：背景色、选中行的背景以及上下两条分割线
+ * 尺寸或颜色改变时录制一次，之后每一帧直接绘制缓存；API 23及以上使用Picture（硬件加速支持drawPicture），
+ * 更低的版本退回到位图缓存。使用独立的Paint，不会影响文字的绘制状态
+ */
+class PickChrome {
+    private static final int LINE_WIDTH = 2;
+
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private int mBackgroundColor;
+    private int mSelectBackgroundColor;
+    private int mLineColor;
+    private int mWidth;
+    private int mHeight;
+    private float mSelectTop;
+    private float mSelectBottom;
+    private Picture mPicture;
+    private Bitmap mBitmap;
+    private boolean mIsDirty = true;
+
+    PickChrome() {
+        mPaint.setStyle(Paint.Style.FILL);
+        mPaint.setStrokeWidth(LINE_WIDTH);
+    }
+
+    void setColors(int backgroundColor, int selectBackgroundColor, int lineColor) {
+        if (backgroundColor == mBackgroundColor && selectBackgroundColor == mSelectBackgroundColor
+                && lineColor == mLineColor) {
+            return;
+        }
+        mBackgroundColor = backgroundColor;
+        mSelectBackgroundColor = selectBackgroundColor;
+        mLineColor = lineColor;
+        mIsDirty = true;
+    }
+
+    /**
+     * @param selectTop 选中行的上边界
+     * @param selectBottom 选中行的下边界
+     */
+    void setBounds(int width, int height, float selectTop, float selectBottom) {
+        if (width == mWidth && height == mHeight && selectTop == mSelectTop && selectBottom == mSelectBottom) {
+            return;
+        }
+        mWidth = width;
+        mHeight = height;
+        mSelectTop = selectTop;
+        mSelectBottom = selectBottom;
+        mIsDirty = true;
+    }
+
+    void draw(Canvas canvas) {
+        if (mWidth <= 0 || mHeight <= 0) {
+            return;
+        }
+        if (mIsDirty || (mPicture == null && (mBitmap == null || mBitmap.isRecycled()))) {
+            record();
+        }
+        if (mPicture != null) {
+            canvas.drawPicture(mPicture);
+        } else {
+            canvas.drawBitmap(mBitmap, 0, 0, null);
+        }
+    }
+
+    /**
+     * 释放位图缓存，下一次绘制时重新录制
+     */
+    void release() {
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+        mPicture = null;
+    }
+
+    private void record() {
+        mIsDirty = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            if (mPicture == null) {
+                mPicture = new Picture();
+            }
+            drawChrome(mPicture.beginRecording(mWidth, mHeight));
+            mPicture.endRecording();
+            return;
+        }
+        if (mBitmap == null || mBitmap.isRecycled() || mBitmap.getWidth() != mWidth
+                || mBitmap.getHeight() != mHeight) {
+            if (mBitmap != null) {
+                mBitmap.recycle();
+            }
+            mBitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        } else {
+            mBitmap.eraseColor(0);
+        }
+        drawChrome(new Canvas(mBitmap));
+    }
+
+    private void drawChrome(Canvas canvas) {
+        canvas.drawColor(mBackgroundColor);
+        mPaint.setColor(mSelectBackgroundColor);
+        canvas.drawRect(0, mSelectTop, mWidth, mSelectBottom, mPaint); // 设置中间选中位置的背景颜色
+        mPaint.setColor(mLineColor);
+        canvas.drawLine(0, mSelectTop, mWidth, mSelectTop, mPaint); // 这里是画两条线在视图中央
+        canvas.drawLine(0, mSelectBottom, mWidth, mSelectBottom, mPaint);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+/**
+ * 滚轮选择器的数据源，用于城市、商品等非数值的大数据集
+ * 显示文字按页懒加载，{@link #loadPage(int, int)}在工作线程中调用，加载完成之前对应的行显示占位文字
+ */
+public interface PickDataSource {
+    /**
+     * @return 数据总数，在主线程中调用，数据源的生命周期内不应该改变
+     */
+    int getCount();
+
+    /**
+     * 加载一页显示文字
+     * @param startIndex 第一条数据的下标
+     * @param count 需要加载的条数，不会超出数据总数
+     * @return 长度为count的显示文字数组
+     */
+    @WorkerThread
+    @NonNull
+    String[] loadPage(int startIndex, int count);
+}
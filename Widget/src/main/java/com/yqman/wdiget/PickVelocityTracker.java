@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import android.view.MotionEvent;
+
+/**
+ * 滚轮选择器使用的纵向速度计算器
+ * 直接读取MotionEvent中的采样点（包括批量上报的历史采样点），保存在固定大小的环形缓冲区中，
+ * 抬起手指时对最近{@link #HORIZON_MS}内的采样点做最小二乘拟合得到速度，整个过程不分配内存
+ * 同一时刻只会有一个滚轮被触摸，因此并排摆放的多个{@link ScrollPickView}可以共用同一个实例
+ */
+public class PickVelocityTracker {
+    // 参与计算的采样点数量上限
+    private static final int SAMPLE_COUNT = 20;
+    // 只使用最近100ms内的采样点
+    private static final long HORIZON_MS = 100;
+    // 两次采样之间超过该时间间隔则认为手指停顿过，之前的采样点不再参与计算
+    private static final long ASSUME_STOPPED_MS = 40;
+
+    private final float[] mY = new float[SAMPLE_COUNT];
+    private final long[] mTime = new long[SAMPLE_COUNT];
+    private int mIndex = -1;
+    private int mSize;
+
+    /**
+     * 开始新的一次触摸前调用，清空之前的采样点
+     */
+    public void clear() {
+        mIndex = -1;
+        mSize = 0;
+    }
+
+    /**
+     * 记录一次触摸事件，包括其中的历史采样点
+     */
+    public void addMovement(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            clear();
+        }
+        final int historySize = event.getHistorySize();
+        for (int i = 0; i < historySize; i++) {
+            addSample(event.getHistoricalEventTime(i), event.getHistoricalY(i));
+        }
+        addSample(event.getEventTime(), event.getY());
+    }
+
+    /**
+     * 记录一个采样点
+     * @param eventTime 采样时间 ms
+     * @param y 纵坐标 px
+     */
+    public void addSample(long eventTime, float y) {
+        if (mSize > 0 && eventTime - mTime[mIndex] > ASSUME_STOPPED_MS) {
+            clear();
+        }
+        mIndex = (mIndex + 1) % SAMPLE_COUNT;
+        mY[mIndex] = y;
+        mTime[mIndex] = eventTime;
+        if (mSize < SAMPLE_COUNT) {
+            mSize++;
+        }
+    }
+
+    /**
+     * 计算纵向速度
+     * @param maxVelocity 速度绝对值的上限 px/s
+     * @return 速度 px/s，正值表示手指向下移动
+     */
+    public float getYVelocity(float maxVelocity) {
+        float velocity = computeVelocity();
+        if (velocity > maxVelocity) {
+            return maxVelocity;
+        } else if (velocity < -maxVelocity) {
+            return -maxVelocity;
+        }
+        return velocity;
+    }
+
+    /**
+     * 以最新的采样点为原点，对时间窗内的采样点做一次线性最小二乘拟合，斜率即为速度
+     */
+    private float computeVelocity() {
+        if (mSize < 2) {
+            return 0;
+        }
+        final long newestTime = mTime[mIndex];
+        final float newestY = mY[mIndex];
+        double sumT = 0;
+        double sumY = 0;
+        double sumTT = 0;
+        double sumTY = 0;
+        int count = 0;
+        for (int i = 0; i < mSize; i++) {
+            int index = (mIndex - i + SAMPLE_COUNT) % SAMPLE_COUNT;
+            long age = newestTime - mTime[index];
+            if (age > HORIZON_MS) {
+                break;
+            }
+            double t = -age / 1000d; // s
+            double y = mY[index] - newestY;
+            sumT += t;
+            sumY += y;
+            sumTT += t * t;
+            sumTY += t * y;
+            count++;
+        }
+        if (count < 2) {
+            return 0;
+        }
+        double denominator = count * sumTT - sumT * sumT;
+        if (denominator == 0) {
+            return 0;
+        }
+        return (float) ((count * sumTY - sumT * sumY) / denominator);
+    }
+}
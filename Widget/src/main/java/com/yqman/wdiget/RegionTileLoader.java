@@ -0,0 +1,347 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+/**
+ * {@link ZoomImageView}的分块模式：超大图片不整张解码，而是通过BitmapRegionDecoder
+ * 先解码一张不超过屏幕大小的低分辨率底图，放大后只解码当前可见区域内的图块
+ * 图块的解码在共享的后台线程中进行，解码结果放在所有实例共用、按字节数限制总大小的LRU缓存中，平移时淘汰最久未使用的图块
+ * 打开图片或者解码底图失败时回调调用方，由调用方改用其他方式显示
+ * 除了后台解码以外的方法都只能在主线程调用
+ */
+class RegionTileLoader {
+    private static final String TAG = "RegionTileLoader";
+    // 解码后每个图块的边长 px
+    private static final int TILE_SIZE = 512;
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    // 所有实例共用，空闲时线程会退出；BitmapRegionDecoder内部是串行的，多线程并不会更快
+    private static final ThreadPoolExecutor EXECUTOR;
+    // 所有实例共用的图块缓存，ViewPager同时保留多页时总大小也不会超过上限；key的高32位是实例的编号，低32位是图块的编号
+    private static final LruCache<Long, Bitmap> TILE_CACHE;
+    private static int sNextId;
+
+    static {
+        EXECUTOR = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        EXECUTOR.allowCoreThreadTimeOut(true);
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        TILE_CACHE = new LruCache<Long, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    private final int mId;
+    private final String mPath;
+    private final Runnable mOnUpdated;
+    private final Runnable mOnFailed;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Matrix mDrawMatrix = new Matrix();
+    // 已经提交给后台、还未完成的图块
+    private final HashSet<Long> mPendingTiles = new HashSet<>();
+    // 只在后台线程中使用
+    private BitmapRegionDecoder mDecoder;
+    private int mImageWidth;
+    private int mImageHeight;
+    private Bitmap mBaseLayer;
+    private int mBaseSampleSize;
+    // 当前可见的图块范围，后台线程据此跳过已经移出屏幕的图块
+    private volatile VisibleRange mVisibleRange;
+    private volatile boolean mIsReleased;
+
+    /**
+     * @param path 图片文件路径
+     * @param onUpdated 底图或者图块解码完成时在主线程回调
+     * @param onFailed 图片无法打开（例如BitmapRegionDecoder不支持的格式）或者底图解码失败时在主线程回调，之后不会再有任何回调
+     */
+    RegionTileLoader(String path, Runnable onUpdated, Runnable onFailed) {
+        mId = sNextId++;
+        mPath = path;
+        mOnUpdated = onUpdated;
+        mOnFailed = onFailed;
+    }
+
+    /**
+     * 在后台打开图片并解码底图
+     * @param targetWidth 底图的最大宽度，一般是屏幕宽度
+     * @param targetHeight 底图的最大高度
+     */
+    void open(final int targetWidth, final int targetHeight) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mIsReleased) {
+                    return;
+                }
+                final BitmapRegionDecoder decoder;
+                try {
+                    decoder = BitmapRegionDecoder.newInstance(mPath, false);
+                } catch (IOException e) {
+                    Log.w(TAG, "open region decoder failed: " + mPath, e);
+                    postFailed();
+                    return;
+                }
+                mDecoder = decoder;
+                final int imageWidth = decoder.getWidth();
+                final int imageHeight = decoder.getHeight();
+                int sampleSize = 1;
+                while (imageWidth / sampleSize > targetWidth || imageHeight / sampleSize > targetHeight) {
+                    sampleSize *= 2;
+                }
+                final int baseSampleSize = sampleSize;
+                final Bitmap baseLayer = decodeRegion(new Rect(0, 0, imageWidth, imageHeight), baseSampleSize);
+                if (baseLayer == null) {
+                    postFailed();
+                    return;
+                }
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mIsReleased) {
+                            return;
+                        }
+                        mImageWidth = imageWidth;
+                        mImageHeight = imageHeight;
+                        mBaseSampleSize = baseSampleSize;
+                        mBaseLayer = baseLayer;
+                        mOnUpdated.run();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 只在后台线程中调用
+     */
+    private void postFailed() {
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mIsReleased) {
+                    return;
+                }
+                mOnFailed.run();
+            }
+        });
+    }
+
+    /**
+     * @return 底图是否已经解码完成，完成后才知道图片的尺寸
+     */
+    boolean isReady() {
+        return mBaseLayer != null;
+    }
+
+    String getPath() {
+        return mPath;
+    }
+
+    int getImageWidth() {
+        return mImageWidth;
+    }
+
+    int getImageHeight() {
+        return mImageHeight;
+    }
+
+    /**
+     * 先绘制底图，当前缩放比例下底图不够清晰时再绘制可见区域内已经解码的图块，缺少的图块交给后台解码
+     * @param ratio 原图到View的缩放比例
+     * @param translateX 原图左上角在View中的横坐标
+     * @param translateY 原图左上角在View中的纵坐标
+     */
+    void draw(Canvas canvas, float ratio, float translateX, float translateY, int viewWidth, int viewHeight) {
+        if (mBaseLayer == null) {
+            return;
+        }
+        mDrawMatrix.setScale(ratio * mBaseSampleSize, ratio * mBaseSampleSize);
+        mDrawMatrix.postTranslate(translateX, translateY);
+        canvas.drawBitmap(mBaseLayer, mDrawMatrix, mPaint);
+
+        int sampleSize = getSampleSize(ratio);
+        if (sampleSize >= mBaseSampleSize) { // 底图已经足够清晰
+            return;
+        }
+        int tileImageSize = TILE_SIZE * sampleSize; // 每个图块在原图中的边长
+        float left = Math.max(0, -translateX / ratio);
+        float top = Math.max(0, -translateY / ratio);
+        float right = Math.min(mImageWidth, (viewWidth - translateX) / ratio);
+        float bottom = Math.min(mImageHeight, (viewHeight - translateY) / ratio);
+        if (right <= left || bottom <= top) {
+            return;
+        }
+        int startColumn = (int) (left / tileImageSize);
+        int endColumn = (int) ((right - 1) / tileImageSize);
+        int startRow = (int) (top / tileImageSize);
+        int endRow = (int) ((bottom - 1) / tileImageSize);
+        VisibleRange range = mVisibleRange;
+        if (range == null || !range.equals(sampleSize, startColumn, endColumn, startRow, endRow)) {
+            mVisibleRange = new VisibleRange(sampleSize, startColumn, endColumn, startRow, endRow);
+        }
+        float tileScale = ratio * sampleSize;
+        for (int row = startRow; row <= endRow; row++) {
+            for (int column = startColumn; column <= endColumn; column++) {
+                long key = tileKey(sampleSize, column, row);
+                Bitmap tile = TILE_CACHE.get(key);
+                if (tile == null) {
+                    requestTile(key, sampleSize, column, row);
+                    continue;
+                }
+                mDrawMatrix.setScale(tileScale, tileScale);
+                mDrawMatrix.postTranslate(translateX + column * tileImageSize * ratio,
+                        translateY + row * tileImageSize * ratio);
+                canvas.drawBitmap(tile, mDrawMatrix, mPaint);
+            }
+        }
+    }
+
+    /**
+     * 不再使用时调用，后台未完成的解码结果都会被丢弃
+     */
+    void release() {
+        mIsReleased = true;
+        for (Long key : TILE_CACHE.snapshot().keySet()) {
+            if ((int) (key >>> 32) == mId) {
+                TILE_CACHE.remove(key);
+            }
+        }
+        mPendingTiles.clear();
+        mBaseLayer = null;
+        EXECUTOR.execute(new Runnable() { // 和解码任务串行执行，保证不会在解码过程中被回收
+            @Override
+            public void run() {
+                if (mDecoder != null) {
+                    mDecoder.recycle();
+                    mDecoder = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * 选择解码后每个像素不小于屏幕上一个像素的最大采样率（2的幂）
+     */
+    static int getSampleSize(float ratio) {
+        int sampleSize = 1;
+        while (sampleSize * 2 * ratio <= 1) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * 低32位依次是采样率的指数（4位）、列号和行号（各14位），足够表示BitmapRegionDecoder能打开的图片
+     */
+    private long tileKey(int sampleSize, int column, int row) {
+        int tile = (Integer.numberOfTrailingZeros(sampleSize) << 28) | (column << 14) | row;
+        return ((long) mId << 32) | (tile & 0xFFFFFFFFL);
+    }
+
+    private void requestTile(final long key, final int sampleSize, final int column, final int row) {
+        if (!mPendingTiles.add(key)) {
+            return;
+        }
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap tile = null;
+                VisibleRange range = mVisibleRange;
+                if (!mIsReleased && range != null && range.contains(sampleSize, column, row)) {
+                    int tileImageSize = TILE_SIZE * sampleSize;
+                    int left = column * tileImageSize;
+                    int top = row * tileImageSize;
+                    Rect region = new Rect(left, top, Math.min(left + tileImageSize, mImageWidth),
+                            Math.min(top + tileImageSize, mImageHeight));
+                    tile = decodeRegion(region, sampleSize);
+                }
+                final Bitmap result = tile;
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mPendingTiles.remove(key);
+                        if (mIsReleased || result == null) { // 已经移出屏幕的图块下次可见时重新请求
+                            return;
+                        }
+                        TILE_CACHE.put(key, result);
+                        mOnUpdated.run();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 只在后台线程中调用
+     */
+    private Bitmap decodeRegion(Rect region, int sampleSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        try {
+            return mDecoder.decodeRegion(region, options);
+        } catch (IllegalArgumentException | OutOfMemoryError e) {
+            Log.w(TAG, "decode region failed: " + region, e);
+            return null;
+        }
+    }
+
+    /**
+     * 某一采样率下可见图块的行列范围，不可变，用于在线程之间传递
+     */
+    private static final class VisibleRange {
+        private final int mSampleSize;
+        private final int mStartColumn;
+        private final int mEndColumn;
+        private final int mStartRow;
+        private final int mEndRow;
+
+        VisibleRange(int sampleSize, int startColumn, int endColumn, int startRow, int endRow) {
+            mSampleSize = sampleSize;
+            mStartColumn = startColumn;
+            mEndColumn = endColumn;
+            mStartRow = startRow;
+            mEndRow = endRow;
+        }
+
+        boolean equals(int sampleSize, int startColumn, int endColumn, int startRow, int endRow) {
+            return mSampleSize == sampleSize && mStartColumn == startColumn && mEndColumn == endColumn
+                    && mStartRow == startRow && mEndRow == endRow;
+        }
+
+        boolean contains(int sampleSize, int column, int row) {
+            return mSampleSize == sampleSize && column >= mStartColumn && column <= mEndColumn
+                    && row >= mStartRow && row <= mEndRow;
+        }
+    }
+}
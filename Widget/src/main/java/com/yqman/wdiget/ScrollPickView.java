@@ -14,23 +14,22 @@
 
 package com.yqman.wdiget;
 
-import java.lang.ref.WeakReference;
-import java.util.Timer;
-import java.util.TimerTask;
-
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.os.Handler;
-import android.os.Message;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.support.annotation.FloatRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 
 /**
  * 使用该Dialog需要注意Activity不应该有如下配置，否者横竖屏切换过程中容易导致控件显示异常，因为setMeasuredDimension(width, height);无效
@@ -39,8 +38,9 @@ import android.view.View;
 
 public class ScrollPickView extends View {
     private static final String TAG = "ScrollPickView";
+    // 打开后打印每次onDraw中文字缓存的未命中次数；onDraw中的内存分配用Android Studio的Allocation Tracker检查
+    private static final boolean DEBUG = false;
     private static final int DEFAULT_OFFSET = 2;
-    private static final int AFTER_ANIMATION_TIME_GAP = 10; // 动画10ms刷新一次
     private static final float ITEM_HEIGHT_DP = 35;
     // 相对于itemHeight对应的最大字体大小
     private static final float LARGE_TEXT_SIZE_RELATIVE_ITEM_HEIGHT = (4 / 5f);
@@ -48,8 +48,31 @@ public class ScrollPickView extends View {
     private static final float SMALL_TEXT_SIZE_RELATIVE_LARGE_TEXT_ = (3 / 5f);
     // 最大字体长度
     private static final int MAX_FONT_LENGTH = 5;
+    // 数据源的页还未加载完成时显示的文字
+    private static final String PLACEHOLDER_LABEL = "…";
+    // 所有实例共用，开启图集模式时默认格式的滚轮可以共用图集
+    private static final Formatter DEFAULT_FORMATTER = new Formatter() {
+        @Override
+        public String getFormatString(int value) {
+            return String.valueOf(value);
+        }
+    };
 
-    // onMeasure里面实时算出来的 以px为单位
+    // 每一行的期望高度，只在密度可能变化时重新计算
+    private int mDesiredItemHeightPx;
+    // 上一次onMeasure的输入和结果，输入不变时直接复用
+    private boolean mIsMeasureCacheValid;
+    private int mLastWidthMeasureSpec;
+    private int mLastHeightMeasureSpec;
+    private int mLastMeasureOffset;
+    private int mLastMeasuredWidth;
+    private int mLastMeasuredHeight;
+    // 当前几何数据对应的宽高和mOffset，不变时不重新计算
+    private int mGeometryWidth;
+    private int mGeometryHeight;
+    private int mGeometryOffset = -1;
+
+    // 尺寸变化时算出来的 以px为单位
     private float mTotalHeightPx;
     private float mHalfTotalHeightPx;
     private float mTotalWidthPx;
@@ -77,30 +100,69 @@ public class ScrollPickView extends View {
     private boolean mIsLoopFlag;
     // 当前显示的中间位置，包含了mOffset的值
     private int mCurrentPosition;
-    private int mInitPosition; // 用于记录调用setValue，setValueRange后应该显示的初始值，在onMeasure方法中才会用
+    private int mInitPosition; // 用于记录调用setValue，setValueRange后应该显示的初始值，在updateGeometry方法中才会用
 
     // 实时更新的数据
     private float mCurrentY;
     private float mLastY;
-    private double mScrollSpeed;
     float mLeftTopX;
     float mLeftTopY;
     float mRightBottomX;
     float mRightBottomY;
     private OnValueChangedListener mOnValueChangedListener;
-    private SpeedCalculate mSpeedCalculate;
+    // 滚动过程中的数值回调，每一帧最多回调一次
+    private OnValueScrollListener mOnValueScrollListener;
+    private final Runnable mValueScrollCallback = new Runnable() {
+        @Override
+        public void run() {
+            onValueScrollFrame();
+        }
+    };
+    private boolean mIsValueScrollPending;
+    // 滞后区间，相对于itemHeight的比例
+    private float mValueScrollHysteresis;
+    // 最近一次回调时选中的行，包含了mOffset的值
+    private int mLastScrollPosition;
+    private int mLastScrollValue;
+    // 手指滑动速度的计算器，可以和其他滚轮共用
+    private PickVelocityTracker mVelocityTracker = new PickVelocityTracker();
+    private boolean mIsTouching;
+    // 只用于绘制文字，背景由mChrome使用单独的Paint绘制
     private Paint mPaint;
-    private AfterAnimationTask mAfterAnimationTask;
-    private Timer mTimer;
-    private Formatter mFormatter = new Formatter() {
+    // 缓存的静态背景层
+    private final PickChrome mChrome = new PickChrome();
+    // 抬起手指后的惯性滚动及对齐，由每一帧的回调驱动
+    private WheelScroller mScroller;
+    private final Runnable mScrollFrameCallback = new Runnable() {
         @Override
-        public String getFormatString(int value) {
-            return String.valueOf(value);
+        public void run() {
+            onScrollFrame();
+        }
+    };
+    private boolean mIsScrollFramePending;
+    private int mMinFlingVelocity;
+    private int mMaxFlingVelocity;
+    private Formatter mFormatter = DEFAULT_FORMATTER;
+    // 格式化后的显示文字，避免滚动时每一帧都重新生成字符串
+    private final LabelCache mLabelCache = new LabelCache();
+    // 每一级字体大小对应的基线位置，在onSizeChanged调用的updateGeometry中计算
+    private final TextSizeTable mTextSizeTable = new TextSizeTable();
+    // mPaint当前的字体级别，-1表示未知
+    private int mTextSizeLevel = -1;
+    // 图集模式：预先绘制好的文字位图，数值范围有限时使用
+    private boolean mIsLabelAtlasEnabled;
+    private LabelAtlas mLabelAtlas;
+    // 数据源模式下按页加载显示文字，为null时使用mMinValue~mMaxValue的数值
+    private PagedLabelLoader mLabelLoader;
+    // beginUpdate的嵌套层数，大于0时修改不触发重绘
+    private int mUpdateDepth;
+    private boolean mIsInvalidateDeferred;
+    private final Runnable mInvalidateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            invalidate();
         }
     };
-    // 处理最后的显示动画
-    private LocalHandler mHandler = new LocalHandler();
-    private int mLoopStateMaxPosition = 2147483;
 
     public ScrollPickView(Context context) {
         this(context, null);
@@ -132,19 +194,26 @@ public class ScrollPickView extends View {
         mValueLength = mMaxValue - mMinValue + 1;
         mIsLoopFlag = a.getBoolean(R.styleable.ScrollPickView_yqman_widget_scroll_pick_enable_loop, false);
         a.recycle();
-        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mChrome.setColors(mNormalBackgroundColor, mSelectBackgroundColor, mSelectItemLineColor);
+        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
         mPaint.setStyle(Paint.Style.FILL);
         mPaint.setTextAlign(Paint.Align.CENTER);
-        mAfterAnimationTask = new AfterAnimationTask(mHandler, this);
-        mTimer = new Timer();
+        mScroller = new WheelScroller(context);
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+        mDesiredItemHeightPx = dip2px(ITEM_HEIGHT_DP);
     }
 
-    // 根据当前视图大小动态设定item的textSize的大小
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-        int desiredHeight = dip2px(ITEM_HEIGHT_DP) * (2 * mOffset + 1);
-        int desiredWidth = dip2px(ITEM_HEIGHT_DP) * MAX_FONT_LENGTH; // 2017年 5个字
+        if (mIsMeasureCacheValid && widthMeasureSpec == mLastWidthMeasureSpec
+                && heightMeasureSpec == mLastHeightMeasureSpec && mOffset == mLastMeasureOffset) {
+            setMeasuredDimension(mLastMeasuredWidth, mLastMeasuredHeight); // 输入没有变化，不需要重新计算
+            return;
+        }
+        int desiredHeight = mDesiredItemHeightPx * (2 * mOffset + 1);
+        int desiredWidth = mDesiredItemHeightPx * MAX_FONT_LENGTH; // 2017年 5个字
         int widthMode = MeasureSpec.getMode(widthMeasureSpec);
         int widthSize = MeasureSpec.getSize(widthMeasureSpec);
         int heightMode = MeasureSpec.getMode(heightMeasureSpec);
@@ -165,12 +234,38 @@ public class ScrollPickView extends View {
         } else {
             height = desiredHeight;
         }
+        mIsMeasureCacheValid = true;
+        mLastWidthMeasureSpec = widthMeasureSpec;
+        mLastHeightMeasureSpec = heightMeasureSpec;
+        mLastMeasureOffset = mOffset;
+        mLastMeasuredWidth = width;
+        mLastMeasuredHeight = height;
         setMeasuredDimension(width, height);
-        if (getHeight() == 0 || getWidth() == 0 ) {
-            return;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateGeometry(w, h);
+    }
+
+    /**
+     * 根据当前视图大小动态设定item的高度、textSize的大小以及选中区域
+     * 宽高和mOffset都没有变化时不做任何事
+     * @return 是否重新计算了
+     */
+    private boolean updateGeometry(int width, int height) {
+        if (width == 0 || height == 0) {
+            return false;
         }
-        mTotalHeightPx = getHeight();
-        mTotalWidthPx = getWidth();
+        if (width == mGeometryWidth && height == mGeometryHeight && mOffset == mGeometryOffset) {
+            return false;
+        }
+        mGeometryWidth = width;
+        mGeometryHeight = height;
+        mGeometryOffset = mOffset;
+        mTotalHeightPx = height;
+        mTotalWidthPx = width;
         mHalfTotalHeightPx = mTotalHeightPx / 2f;
         mItemHeightPx =  mTotalHeightPx / (2 * mOffset + 1);
         mHalfItemHeightPx = mItemHeightPx / 2f;
@@ -181,13 +276,17 @@ public class ScrollPickView extends View {
             mLargeTextSizePx = (mTotalWidthPx / MAX_FONT_LENGTH);
         }
         mSmallTextSizePx = mLargeTextSizePx * SMALL_TEXT_SIZE_RELATIVE_LARGE_TEXT_;
+        if (mTextSizeTable.build(mPaint, mSmallTextSizePx, mLargeTextSizePx)) {
+            mTextSizeLevel = -1;
+        }
+        updateLabelAtlas();
 
         mLeftTopX = 0;
         mLeftTopY = mOffset * mItemHeightPx;
         mRightBottomX = mTotalWidthPx;
         mRightBottomY = mLeftTopY + mItemHeightPx;
+        mChrome.setBounds((int) mTotalWidthPx, (int) mTotalHeightPx, mLeftTopY, mRightBottomY);
 
-        mLoopStateMaxPosition = (int) (Integer.MAX_VALUE / mTotalHeightPx);
         if (mInitPosition >= mOffset) {
             stopAfterAnimation();
             mCurrentY = (mInitPosition - mOffset) * mItemHeightPx; // 设置了初始值还未显示的情况
@@ -195,9 +294,10 @@ public class ScrollPickView extends View {
             mCurrentPosition = 0; // 是的onRestore的值无效
         } else if (mCurrentPosition >= mOffset) {
             stopAfterAnimation();
-            mCurrentY = (mCurrentPosition - mOffset) * mItemHeightPx; // onRestore的情况
+            mCurrentY = (mCurrentPosition - mOffset) * mItemHeightPx; // 尺寸变化或者onRestore的情况，保持选中的行不变
         }
-        invalidate(); // 强刷一次，不然可能存在onDraw方法在此之前就调用了，onMeasure调用了不触发onDraw方法
+        invalidate();
+        return true;
     }
 
     /**
@@ -245,6 +345,7 @@ public class ScrollPickView extends View {
         mSelectBackgroundColor = savedState.mSelectBackgroundColor;
         mNormalBackgroundColor = savedState.mNormalBackgroundColor;
         mSelectItemLineColor = savedState.mSelectItemLineColor;
+        mChrome.setColors(mNormalBackgroundColor, mSelectBackgroundColor, mSelectItemLineColor);
 
         mOffset = savedState.mOffset;
         mCurrentPosition = savedState.mCurrentPosition;
@@ -252,19 +353,50 @@ public class ScrollPickView extends View {
         mMaxValue = savedState.mMaxValue;
         mValueLength = savedState.mValueLength;
         mIsLoopFlag = savedState.mIsLoopFlag;
+        mLabelCache.clear();
+        updateLabelAtlas();
         stopAfterAnimation(); // 横屏切换前停止动画
+        mIsMeasureCacheValid = false; // mOffset可能变化
+        if (!updateGeometry(getWidth(), getHeight()) && mItemHeightPx > 0 && mCurrentPosition >= mOffset) {
+            mCurrentY = (mCurrentPosition - mOffset) * mItemHeightPx; // 尺寸没有变化，直接按恢复的位置显示
+        }
         invalidate();
     }
 
 
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        updateLabelAtlas();
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        int desiredItemHeightPx = dip2px(ITEM_HEIGHT_DP); // 密度可能变化
+        if (desiredItemHeightPx != mDesiredItemHeightPx) {
+            mDesiredItemHeightPx = desiredItemHeightPx;
+            mIsMeasureCacheValid = false;
+            requestLayout();
+        }
+        updateLabelAtlas(); // 密度、字体缩放或者语言变化后换用新配置下的图集
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        int missCount = 0;
+        if (DEBUG) {
+            missCount = mLabelCache.getMissCount();
+        }
         if (mTotalHeightPx != 0) {
             drawBackground(canvas);
             updateView(canvas);
         }
+        if (DEBUG) {
+            Log.d(TAG, "onDraw label cache miss " + (mLabelCache.getMissCount() - missCount));
+        }
     }
 
     /**
@@ -273,16 +405,12 @@ public class ScrollPickView extends View {
     private void updateView(Canvas canvas) {
 
 
-        if (mCurrentY < 0) {
-            mCurrentY = 0;
-        } else if (mCurrentY > (getPositionCount() * mItemHeightPx - mTotalHeightPx)) {
-            mCurrentY = (getPositionCount() * mItemHeightPx - mTotalHeightPx);
-        }
+        mCurrentY = clampCurrentY(mCurrentY);
         float realY = mCurrentY  + mOffsetItemHeightPx + mHalfItemHeightPx;
-        mCurrentPosition = (int) (realY / mItemHeightPx);
+        mCurrentPosition = (int) Math.floor(realY / mItemHeightPx);
         for (int index = mCurrentPosition - mOffset - 1;
              index < mCurrentPosition + mOffset + 1; index++) {
-            if (index < 0 || index >= getPositionCount()) {
+            if (!mIsLoopFlag && (index < 0 || index >= getPositionCount())) {
                 continue;
             }
             if (index != mCurrentPosition) {
@@ -294,69 +422,95 @@ public class ScrollPickView extends View {
     }
 
     /**
-     * 画背景
+     * 画背景，只在尺寸或颜色改变后重新录制
      */
     private void drawBackground(Canvas canvas) {
-        canvas.drawColor(mNormalBackgroundColor);
-        mPaint.setStrokeWidth(2);
-
-        mPaint.setColor(mSelectBackgroundColor);
-        canvas.drawRect(mLeftTopX, mLeftTopY, mRightBottomX, mRightBottomY, mPaint); // 设置中间选中位置的背景颜色
-
-        mPaint.setColor(mSelectItemLineColor);
-        canvas.drawLine(mLeftTopX, mLeftTopY, mRightBottomX, mLeftTopY, mPaint); // 这里是画两条先线在视图中央
-        canvas.drawLine(mLeftTopX, mRightBottomY, mRightBottomX, mRightBottomY, mPaint);
+        mChrome.draw(canvas);
     }
 
     private void drawOtherValue(Canvas canvas,  float realY, int position) {
-        double scale = getScale(realY, position);
-        int alpha  = translateToAlpha(scale);
-        int nextSize = (int) (mSmallTextSizePx + (mLargeTextSizePx - mSmallTextSizePx) * scale);
-        mPaint.setTextSize(nextSize);
-        mPaint.setColor(mNormalItemTextColor);
-        mPaint.setAlpha(alpha);
-        mPaint.setStrokeWidth(3);
-        String text = getDisplayString(position);
-        canvas.drawText(text, mTotalWidthPx / 2, getDisplayYBaseLine(realY, position), mPaint);
+        drawValue(canvas, realY, position, mNormalItemTextColor);
     }
 
     private void drawCurrentValue(Canvas canvas,  float realY) {
-        double scale = getScale(realY, mCurrentPosition);
-        int alpha  = translateToAlpha(scale);
-        int nextSize = (int) (mSmallTextSizePx + (mLargeTextSizePx - mSmallTextSizePx) * scale);
-        mPaint.setTextSize(nextSize);
-        mPaint.setColor(mSelectedItemTextColor);
-        mPaint.setAlpha(alpha);
-        String text = getDisplayString(mCurrentPosition);
-        canvas.drawText(text, mTotalWidthPx / 2, getDisplayYBaseLine(realY, mCurrentPosition), mPaint);
+        drawValue(canvas, realY, mCurrentPosition, mSelectedItemTextColor);
+    }
+
+    private void drawValue(Canvas canvas, float realY, int position, int textColor) {
+        double scale = getScale(realY, position);
+        int level = mTextSizeTable.getLevel(scale);
+        if (level != mTextSizeLevel) { // 相邻行的字体大小相同时不再重复设置
+            mTextSizeLevel = level;
+            mPaint.setTextSize(mTextSizeTable.getTextSize(level));
+        }
+        mPaint.setColor(textColor);
+        mPaint.setAlpha(translateToAlpha(scale));
+        if (mLabelAtlas != null) {
+            if (!isEmptyPosition(position)) {
+                mLabelAtlas.draw(canvas, getPositionValue(position), mTotalWidthPx / 2,
+                        getDisplayYBaseLine(realY, position, level), mTextSizeTable.getTextSize(level), mPaint);
+            }
+            return;
+        }
+        String text = getDisplayString(position);
+        canvas.drawText(text, mTotalWidthPx / 2, getDisplayYBaseLine(realY, position, level), mPaint);
     }
 
-    private float getDisplayYBaseLine(float realY, int position) {
+    private float getDisplayYBaseLine(float realY, int position, int level) {
         float positionY = position * mItemHeightPx;
         float absDistance = Math.abs(positionY - realY);
+        float top;
         if (positionY < realY) {
             // 中心线上面
-            float top = mHalfTotalHeightPx - absDistance;
-            float bottom = top + mItemHeightPx;
-            Paint.FontMetricsInt fontMetrics = mPaint.getFontMetricsInt();
-            return (float) ((top + bottom - fontMetrics.bottom - fontMetrics.top) / (double) 2);
+            top = mHalfTotalHeightPx - absDistance;
         } else {
-            float top = mHalfTotalHeightPx + absDistance;
-            float bottom = top + mItemHeightPx;
-            Paint.FontMetricsInt fontMetrics = mPaint.getFontMetricsInt();
-            return  (float) ((top + bottom - fontMetrics.bottom - fontMetrics.top) / (double) 2);
+            top = mHalfTotalHeightPx + absDistance;
         }
+        return top + mHalfItemHeightPx + mTextSizeTable.getBaselineOffset(level);
     }
 
     private String getDisplayString(int position) {
-        if (position < mOffset) {
+        if (isEmptyPosition(position)) {
             return "";
         }
-        if (!mIsLoopFlag && position > (getPositionCount() - mOffset - 1)) {
-            return "";
+        int value = getPositionValue(position);
+        if (mLabelLoader != null) {
+            String label = mLabelLoader.getLabel(value - mMinValue);
+            return label == null ? PLACEHOLDER_LABEL : label;
+        }
+        String label = mLabelCache.get(value);
+        if (label == null) {
+            label = mFormatter.getFormatString(value);
+            mLabelCache.put(value, label);
+        }
+        return label;
+    }
+
+    /**
+     * 首尾用于占位的空白行
+     */
+    private boolean isEmptyPosition(int position) {
+        if (mValueLength <= 0) {
+            return true;
+        }
+        if (mIsLoopFlag) {
+            return false;
+        }
+        return position < mOffset || position > (getPositionCount() - mOffset - 1);
+    }
+
+    /**
+     * 循环模式下position可以是任意整数，按数值个数取模得到对应的数值
+     */
+    private int getPositionValue(int position) {
+        if (mValueLength <= 0) {
+            return mMinValue;
+        }
+        int index = (position - mOffset) % mValueLength;
+        if (index < 0) {
+            index += mValueLength;
         }
-        int value = ((position - mOffset) % mValueLength) + mMinValue;
-        return mFormatter.getFormatString(value);
+        return index + mMinValue;
     }
 
     /**
@@ -397,7 +551,7 @@ public class ScrollPickView extends View {
      */
     public void turnOnLoop() {
         mIsLoopFlag = true;
-        invalidate();
+        requestInvalidate();
     }
 
     /**
@@ -406,7 +560,7 @@ public class ScrollPickView extends View {
      */
     public void turnOffLoop() {
         mIsLoopFlag = false;
-        invalidate();
+        requestInvalidate();
     }
 
     /**
@@ -414,7 +568,7 @@ public class ScrollPickView extends View {
      * @return position @IntRange(from = minValue, to = maxValue)
      */
     public int getValue() {
-        return ((mCurrentPosition - mOffset) % mValueLength) + mMinValue;
+        return getPositionValue(mCurrentPosition);
     }
 
     /**
@@ -425,19 +579,133 @@ public class ScrollPickView extends View {
         mOnValueChangedListener = listener;
     }
 
+    /**
+     * 设置滚动过程中的数值监听器：手指拖动以及惯性滚动期间，选中线下的数值变化时回调，每一帧最多回调一次
+     * 与{@link OnValueChangedListener}不同，不需要等滚动停止；通过setValue等方法修改数值时不会回调
+     * @param listener 为null时取消监听
+     */
+    public void setOnValueScrollListener(@Nullable OnValueScrollListener listener) {
+        mOnValueScrollListener = listener;
+        if (listener == null) {
+            cancelValueScrollFrame();
+        }
+    }
+
+    /**
+     * 设置滚动回调的滞后区间：越过相邻两行的分界线之后还需要继续滚动该距离才认为选中的行发生了变化，
+     * 避免在分界线附近来回拖动时频繁回调，适用于回调中有较重计算的场景
+     * 滚动停止时总会回调最终对齐的数值
+     * @param fraction 相对于行高的比例，取值[0, 0.5)，默认为0
+     */
+    public void setValueScrollHysteresis(@FloatRange(from = 0, to = 0.5, toInclusive = false) float fraction) {
+        if (fraction < 0) {
+            fraction = 0;
+        } else if (fraction >= 0.5f) {
+            fraction = 0.49f;
+        }
+        mValueScrollHysteresis = fraction;
+    }
+
+    /**
+     * 设置手指滑动速度的计算器，多个滚轮同时显示时可以共用同一个实例
+     * @param velocityTracker 速度计算器
+     */
+    public void setVelocityTracker(@NonNull PickVelocityTracker velocityTracker) {
+        mVelocityTracker = velocityTracker;
+    }
+
+    @NonNull
+    public PickVelocityTracker getVelocityTracker() {
+        return mVelocityTracker;
+    }
+
+    /**
+     * 开始批量修改，直到对应的{@link #commitUpdate()}之前，范围、数值、循环等修改都不会触发重绘
+     * 可以嵌套调用；联动的多个滚轮可以各自包一层，所有修改在同一帧中生效
+     */
+    public void beginUpdate() {
+        mUpdateDepth++;
+    }
+
+    /**
+     * 结束批量修改，最外层的commit统一重绘一次
+     */
+    public void commitUpdate() {
+        if (mUpdateDepth == 0) {
+            return;
+        }
+        mUpdateDepth--;
+        if (mUpdateDepth == 0 && mIsInvalidateDeferred) {
+            mIsInvalidateDeferred = false;
+            invalidate();
+        }
+    }
+
+    /**
+     * 批量修改期间只记录需要重绘，commit时再统一重绘
+     */
+    private void requestInvalidate() {
+        if (mUpdateDepth > 0) {
+            mIsInvalidateDeferred = true;
+            return;
+        }
+        invalidate();
+    }
+
     /**
      * 设置显示的起止位置
      * @param minValue 开始位置
      * @param maxValue 结束位置
      */
     public void setValueRange(int minValue, int maxValue) {
-        if (minValue == mMinValue && maxValue == mMaxValue) {
+        if (mLabelLoader == null && minValue == mMinValue && maxValue == mMaxValue) {
+            return;
+        }
+        releaseLabelLoader();
+        applyValueRange(minValue, maxValue);
+    }
+
+    /**
+     * 设置数据源，用于非数值的大数据集，显示文字在后台按页加载
+     * 使用数据源时{@link #getValue()}以及{@link OnValueChangedListener}中的值为数据的下标
+     * @param dataSource 数据源，为null时恢复显示0~0的数值
+     */
+    public void setDataSource(@Nullable PickDataSource dataSource) {
+        releaseLabelLoader();
+        if (dataSource == null) {
+            applyValueRange(0, 0);
+            return;
+        }
+        mLabelLoader = new PagedLabelLoader(dataSource, mInvalidateRunnable);
+        int count = mLabelLoader.getCount();
+        if (count <= 0) { // 空数据源，只显示空白
+            stopAfterAnimation();
+            mMinValue = 0;
+            mMaxValue = -1;
+            mValueLength = 0;
+            mCurrentY = 0;
+            mCurrentPosition = mOffset;
+            updateLabelAtlas();
+            requestInvalidate();
             return;
         }
+        applyValueRange(0, count - 1);
+    }
+
+    private void releaseLabelLoader() {
+        if (mLabelLoader != null) {
+            mLabelLoader.release();
+            mLabelLoader = null;
+        }
+    }
+
+    private void applyValueRange(int minValue, int maxValue) {
         int value = getValue(); // 在给mMinValue、和mMaxValue赋值之前调用
+        mLabelCache.clear();
         mMinValue = minValue;
         mMaxValue = maxValue;
         mValueLength = mMaxValue - mMinValue + 1;
+        updateLabelAtlas();
         if (value >= mMinValue && value <= mMaxValue) {
             updateCurrentYAndPosition(value);
         } else {
@@ -447,7 +715,7 @@ public class ScrollPickView extends View {
                 updateCurrentYAndPosition(mMaxValue);
             }
         }
-        invalidate();
+        requestInvalidate();
     }
 
     /**
@@ -457,7 +725,7 @@ public class ScrollPickView extends View {
     public void setInitValue(final int value) {
         if (value >= mMinValue &&  value <= mMaxValue) {
             updateCurrentYAndPosition(value);
-            invalidate();
+            requestInvalidate();
         }
     }
 
@@ -467,9 +735,9 @@ public class ScrollPickView extends View {
      * @param newValue 设定的新值
      */
     private void updateCurrentYAndPosition(int newValue) {
-        if (mItemHeightPx == 0) { // 还未完成onMeasure方法
+        if (mItemHeightPx == 0) { // 还未计算过尺寸（updateGeometry）
             stopAfterAnimation();
-            mInitPosition = newValue - mMinValue + mOffset; // 执行到此处表明onMeasure方法还没被执行，这里暂存该初始位置信息；
+            mInitPosition = newValue - mMinValue + mOffset; // 执行到此处表明updateGeometry方法还没被执行，这里暂存该初始位置信息；
             mCurrentPosition = mInitPosition; // 有时候还没绘制导致无法更新mCurrentPosition值，但是又立即调用getValue导致出错
             return;
         }
@@ -479,7 +747,7 @@ public class ScrollPickView extends View {
         }
         int adjust = newValue - oldValue; // + 则往下挪 - 则往上挪
         float y = mCurrentY + adjust * mItemHeightPx;
-        if (y >= 0 && y <= (getPositionCount() * mItemHeightPx - mTotalHeightPx)) { // 检查Y是否超限
+        if (mIsLoopFlag || (y >= 0 && y <= getMaxCurrentY())) { // 检查Y是否超限
             stopAfterAnimation();
             mCurrentPosition += adjust;
             mCurrentY = y;
@@ -492,14 +760,68 @@ public class ScrollPickView extends View {
 
     public void setFormatter(@NonNull Formatter formatter) {
         mFormatter = formatter;
+        mLabelCache.clear();
+        updateLabelAtlas();
+        requestInvalidate();
     }
 
+    /**
+     * 开启图集模式：每个数值的文字只绘制一次到共享的位图中，滚动时直接缩放贴图，
+     * 适用于月份、小时等数值范围有限的滚轮；数值个数超过{@link LabelAtlas#MAX_LABEL_COUNT}、
+     * 图集超过最大纹理尺寸或者使用数据源时不生效，仍然使用drawText
+     * 默认关闭
+     */
+    public void setLabelAtlasEnabled(boolean enable) {
+        if (mIsLabelAtlasEnabled == enable) {
+            return;
+        }
+        mIsLabelAtlasEnabled = enable;
+        updateLabelAtlas();
+        requestInvalidate();
+    }
+
+    /**
+     * 根据当前的Formatter、数值范围和字体大小获取对应的图集，没有变化时不做任何事
+     */
+    private void updateLabelAtlas() {
+        int textSize = (int) mLargeTextSizePx;
+        if (!mIsLabelAtlasEnabled || mLabelLoader != null || textSize <= 0
+                || !ViewCompat.isAttachedToWindow(this)) {
+            releaseLabelAtlas();
+            return;
+        }
+        if (mLabelAtlas != null && mLabelAtlas.matches(getResources(), mFormatter, mMinValue, mMaxValue, textSize)) {
+            return;
+        }
+        releaseLabelAtlas();
+        mLabelAtlas = LabelAtlas.acquire(getResources(), mFormatter, mMinValue, mMaxValue, textSize);
+    }
+
+    private void releaseLabelAtlas() {
+        if (mLabelAtlas != null) {
+            mLabelAtlas.release();
+            mLabelAtlas = null;
+        }
+    }
+
+    /**
+     * 非循环模式下的总行数，包括首尾的空白行
+     */
     private int getPositionCount() {
+        return mValueLength + (2 * mOffset);
+    }
+
+    /**
+     * 非循环模式下把mCurrentY限制在可滚动范围内；循环模式不限制
+     */
+    private float clampCurrentY(float y) {
         if (mIsLoopFlag) {
-            return mLoopStateMaxPosition;
-        } else {
-            return mValueLength + (2 * mOffset);
+            return y;
+        }
+        if (y < 0) {
+            return 0;
         }
+        return Math.min(y, getMaxCurrentY());
     }
 
     @Override
@@ -509,6 +831,7 @@ public class ScrollPickView extends View {
                 handleDown(event);
                 break;
             case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
                 handleUp(event);
                 break;
             case MotionEvent.ACTION_MOVE:
@@ -525,9 +848,13 @@ public class ScrollPickView extends View {
      */
     private void handleDown(MotionEvent e) {
         mLastY = e.getY();
-        mSpeedCalculate = new SpeedCalculate();
-        mSpeedCalculate.startCalculate();
+        mIsTouching = true;
+        mVelocityTracker.clear();
+        mVelocityTracker.addMovement(e);
         stopAfterAnimation();
+        wrapLoopCurrentY();
+        mLastScrollPosition = mCurrentPosition;
+        mLastScrollValue = getValue();
     }
 
 
@@ -535,217 +862,175 @@ public class ScrollPickView extends View {
      * handle user move screen action
      */
     private void handleMove(MotionEvent e) {
-        mCurrentY += mLastY - e.getY() ;
-        if (mCurrentY < 0) {
-            mCurrentY = 0;
-        } else if (mCurrentY > (getPositionCount() * mItemHeightPx - mTotalHeightPx)){
-            mCurrentY = (getPositionCount() * mItemHeightPx - mTotalHeightPx);
-        }
+        mVelocityTracker.addMovement(e);
+        mCurrentY = clampCurrentY(mCurrentY + mLastY - e.getY());
         mLastY = e.getY();
         invalidate();
+        postValueScrollFrame();
     }
 
     /**
      * handle user up screen action
      */
     private void handleUp(MotionEvent e) {
-        startAfterAnimation();
+        if (!mIsTouching) {
+            return;
+        }
+        mIsTouching = false;
+        mVelocityTracker.addMovement(e);
+        // 手指向下滑动时mCurrentY减小，因此速度取反
+        startAfterAnimation(-mVelocityTracker.getYVelocity(mMaxFlingVelocity));
     }
 
     /**
      * startStopAnimation after usr up aciton;
-     * 依据用户最后一秒的速度决定抬起手指后滑动多远的距离
+     * 依据用户抬起手指时的速度决定惯性滚动的距离，最后对齐到最近的一项
+     * @param velocity mCurrentY方向上的速度 px/s
      */
-    private void startAfterAnimation() {
-        mSpeedCalculate.stopCalculate();
-        mHandler.mStopAnimation = false;
-        mAfterAnimationTask = new AfterAnimationTask(mHandler, this);
-        mTimer.schedule(mAfterAnimationTask, 0, AFTER_ANIMATION_TIME_GAP);
+    private void startAfterAnimation(float velocity) {
+        if (mItemHeightPx == 0) {
+            return;
+        }
+        mScroller.setBounds(getMinCurrentY(), getMaxCurrentY(), mItemHeightPx);
+        mScroller.fling(mCurrentY, velocity, mMinFlingVelocity);
+        if (mScroller.isFinished()) { // 已经在对齐的位置上了
+            mCurrentY = mScroller.getCurrY();
+            invalidate();
+            postValueScrollFrame();
+            dispatchValueChanged();
+            return;
+        }
+        postScrollFrame();
     }
 
     /**
      * 停止滚动动画；
-     * 在View小时，restore，手点击屏幕，或者更改mCurrentY之前调用该方法，因为下一次使用心得mCurrentY进行绘制
+     * 在View消失，restore，手点击屏幕，或者更改mCurrentY之前调用该方法，因为下一次使用新的mCurrentY进行绘制
      */
     private void stopAfterAnimation() {
-        mHandler.mStopAnimation = true;
-        if (mAfterAnimationTask != null) {
-            mAfterAnimationTask.cancel();
+        mScroller.abort();
+        if (mIsScrollFramePending) {
+            mIsScrollFramePending = false;
+            removeCallbacks(mScrollFrameCallback);
         }
     }
 
-    private class SpeedCalculate extends Thread {
-        private boolean stopRecordFlag = false;
-        private double currentSpeed = 0;
-        private double maxSpeed = 0;
-        private static final int CALCULATE_TIME_GAP = 100; // 计算时间间隔ms
-        @Override
-        public void run() {
-            while(!stopRecordFlag) {
-                try {
-                    float lastY = mCurrentY;
-                    sleep(CALCULATE_TIME_GAP);
-                    currentSpeed = (mCurrentY - lastY) / (CALCULATE_TIME_GAP + 0.001f);
-                    if (Math.abs(currentSpeed) > Math.abs(maxSpeed)) {
-                        maxSpeed = currentSpeed;
-                    }
-                    mScrollSpeed = currentSpeed;
-                } catch (InterruptedException e) {
-                    // do nothing
-                }
-            }
+    private void postScrollFrame() {
+        if (!mIsScrollFramePending) {
+            mIsScrollFramePending = true;
+            ViewCompat.postOnAnimation(this, mScrollFrameCallback);
         }
+    }
 
-        /**
-         * 开始记录
-         */
-        private void startCalculate() {
-            stopRecordFlag = false;
-            start();
-        }
-        /**
-         * 停止记录
-         */
-        private void stopCalculate() {
-            stopRecordFlag = true;
+    /**
+     * 每一帧推进一次滚动位置，滚动结束后回调监听器
+     */
+    private void onScrollFrame() {
+        mIsScrollFramePending = false;
+        boolean running = mScroller.computeScrollOffset();
+        mCurrentY = mScroller.getCurrY();
+        invalidate();
+        postValueScrollFrame();
+        if (running) {
+            postScrollFrame();
+        } else {
+            dispatchValueChanged();
         }
     }
 
-    private static class AfterAnimationTask extends TimerTask {
-        private Handler handler;
-        private WeakReference<ScrollPickView> mView;
-        private boolean initFlag;
-
-        AfterAnimationTask(Handler handler, ScrollPickView view) {
-            this.handler = handler;
-            mView = new WeakReference<>(view);
-            initFlag = true;
+    private void postValueScrollFrame() {
+        if (mOnValueScrollListener != null && !mIsValueScrollPending) {
+            mIsValueScrollPending = true;
+            ViewCompat.postOnAnimation(this, mValueScrollCallback);
         }
+    }
 
-        @Override
-        public void run() {
-            if (mView.get() != null) {
-                if (initFlag) {
-                    initFlag =  false;
-                    handler.sendMessage(handler.obtainMessage(LocalHandler.FIRST_TIME, mView.get()));
-                } else {
-                    handler.sendMessage(handler.obtainMessage(LocalHandler.OTHER_TIME, mView.get()));
-                }
-            }
+    private void cancelValueScrollFrame() {
+        if (mIsValueScrollPending) {
+            mIsValueScrollPending = false;
+            removeCallbacks(mValueScrollCallback);
         }
     }
 
-    private static class LocalHandler extends Handler {
-        private static final int FIRST_TIME = 100;
-        private static final int OTHER_TIME = 101;
-        // 滚动定义为高速的门限值
-        private static final float HIGH_SPEED = 0.2f;
-        // 减速器
-        private static final float DECELERATION_SPEED = 0.1f;
-        // 停止动画门限
-        private static final int STOP_PIXEL_THRESHOLD = 4;
-        // 停止动画每次滚动的像素
-        private static final float LAST_MOVE_PIXEL = 1.5f;
-        int mTargetValue;
-        double mTargetY;
-        boolean mIsLowSpeed;
-        boolean mStopAnimation; // 动画总控制器
-        @Override
-        public void handleMessage(Message msg) {
-            ScrollPickView scrollPickView = (ScrollPickView) msg.obj;
-            if (mStopAnimation) {
-                removeMessages(FIRST_TIME); // 清空消息队列
-                removeMessages(OTHER_TIME);
-                return;
-            }
-            if (msg.what == FIRST_TIME) {
-                mTargetY = 0;
-                mIsLowSpeed = false;
-            }
+    /**
+     * 同一帧内的多次位置变化只在这里处理一次，选中的行越过滞后区间并且数值发生变化时才回调
+     */
+    private void onValueScrollFrame() {
+        mIsValueScrollPending = false;
+        if (mOnValueScrollListener == null || mItemHeightPx == 0) {
+            return;
+        }
+        float realY = clampCurrentY(mCurrentY) + mOffsetItemHeightPx + mHalfItemHeightPx;
+        float hysteresis = mValueScrollHysteresis * mItemHeightPx;
+        if (realY >= mLastScrollPosition * mItemHeightPx - hysteresis
+                && realY < (mLastScrollPosition + 1) * mItemHeightPx + hysteresis) {
+            return; // 仍在上一次选中的行及其滞后区间内
+        }
+        int position = (int) Math.floor(realY / mItemHeightPx);
+        mLastScrollPosition = position;
+        if (isEmptyPosition(position)) {
+            return;
+        }
+        int value = getPositionValue(position);
+        if (value != mLastScrollValue) {
+            mLastScrollValue = value;
+            mOnValueScrollListener.onValueScroll(value);
+        }
+    }
 
-            double speed = scrollPickView.mScrollSpeed;
-            if (scrollPickView.mScrollSpeed > 0) {
-                if (scrollPickView.mScrollSpeed > HIGH_SPEED) {
-                    scrollPickView.mScrollSpeed -= DECELERATION_SPEED;
-                    mIsLowSpeed = false;
-                } else {
-                    if (!mIsLowSpeed) {
-                        mIsLowSpeed = true;
-                        updateTargetY(scrollPickView);
-                    }
-                }
-            } else {
-                if (scrollPickView.mScrollSpeed < - HIGH_SPEED) {
-                    scrollPickView.mScrollSpeed += DECELERATION_SPEED;
-                    mIsLowSpeed = false;
-                } else {
-                    if (!mIsLowSpeed) {
-                        mIsLowSpeed = true;
-                        updateTargetY(scrollPickView);
-                    }
-                }
-            }
-            double nextY;
-            if (mIsLowSpeed) {
-                if (Math.abs(scrollPickView.mCurrentY - mTargetY) < STOP_PIXEL_THRESHOLD) {
-                    scrollPickView.stopAfterAnimation();
-                    scrollPickView.mCurrentY = (float) mTargetY;
-                    scrollPickView.invalidate();
-                    if (scrollPickView.mOnValueChangedListener != null) {
-                        scrollPickView.mOnValueChangedListener.onValueChange(mTargetValue);
-                    }
-                    return;
-                } else if (scrollPickView.mCurrentY > mTargetY){
-                    nextY = scrollPickView.mCurrentY - LAST_MOVE_PIXEL;
-                } else {
-                    nextY = scrollPickView.mCurrentY + LAST_MOVE_PIXEL;
-                }
-            } else {
-                nextY = scrollPickView.mCurrentY + speed * AFTER_ANIMATION_TIME_GAP;
-            }
+    private void dispatchValueChanged() {
+        wrapLoopCurrentY();
+        if (mOnValueChangedListener != null) {
+            mOnValueChangedListener.onValueChange(getValue());
+        }
+    }
 
-            if (nextY <= 0) {
-                scrollPickView.stopAfterAnimation();
-                scrollPickView.mCurrentY = 0;
-                if (scrollPickView.mOnValueChangedListener != null) {
-                    scrollPickView.mOnValueChangedListener.onValueChange(scrollPickView.mMinValue);
-                }
-            } else if (nextY >= (scrollPickView.getPositionCount() * scrollPickView.mItemHeightPx
-                                         - scrollPickView.mTotalHeightPx)){
-                scrollPickView.stopAfterAnimation();
-                scrollPickView.mCurrentY = (scrollPickView.getPositionCount() * scrollPickView.mItemHeightPx
-                                                    - scrollPickView.mTotalHeightPx);
-                if (scrollPickView.mOnValueChangedListener != null) {
-                    scrollPickView.mCurrentPosition = scrollPickView.getPositionCount() - scrollPickView.mOffset - 1;
-                    // 循环滚动情况，最后位置不是最大值，需要重新计算
-                    scrollPickView.mOnValueChangedListener.onValueChange(scrollPickView.getValue());
-                }
-            } else {
-                scrollPickView.mCurrentY = (float) nextY;
-            }
-            scrollPickView.invalidate();
+    /**
+     * 循环模式下把mCurrentY平移整数个循环周期到第一个周期内，显示内容不变，同时保证浮点精度
+     */
+    private void wrapLoopCurrentY() {
+        if (mIsLoopFlag && mValueLength > 0 && mItemHeightPx > 0) {
+            float cycleHeight = mValueLength * mItemHeightPx;
+            int cycles = (int) Math.floor(mCurrentY / cycleHeight);
+            mCurrentY -= cycles * cycleHeight;
+            mLastScrollPosition -= cycles * mValueLength; // 显示内容不变，滚动回调的参考行同步平移
         }
+        if (mItemHeightPx > 0) {
+            mCurrentPosition = (int) Math.floor((mCurrentY + mOffsetItemHeightPx + mHalfItemHeightPx) / mItemHeightPx);
+        }
+    }
+
+    private float getMinCurrentY() {
+        return mIsLoopFlag ? -Float.MAX_VALUE : 0;
+    }
 
-        private void updateTargetY(ScrollPickView scrollPickView) {
-            float realY = scrollPickView.mCurrentY  + scrollPickView.mOffsetItemHeightPx + scrollPickView.mHalfItemHeightPx;
-            int targetPosition = (int) (realY / scrollPickView.mItemHeightPx);
-            mTargetY = (targetPosition - scrollPickView.mOffset) * scrollPickView.mItemHeightPx;
-            scrollPickView.mCurrentPosition = (int) ((mTargetY + scrollPickView.mOffsetItemHeightPx + scrollPickView
-                    .mHalfItemHeightPx) / scrollPickView.mItemHeightPx); // 提前计算下Y对引得position
-            mTargetValue = scrollPickView.getValue(); // 方法底层对position进行装换得到value值
+    private float getMaxCurrentY() {
+        if (mIsLoopFlag) {
+            return Float.MAX_VALUE;
         }
+        return getPositionCount() * mItemHeightPx - mTotalHeightPx;
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
         stopAfterAnimation();
+        cancelValueScrollFrame();
+        releaseLabelAtlas();
+        mChrome.release();
     }
 
     public interface Formatter {
         String getFormatString(int value);
     }
 
+    /**
+     * 滚动过程中的数值回调器，每一帧最多回调一次
+     */
+    public interface OnValueScrollListener {
+        void onValueScroll(int value);
+    }
+
     /**
      * 数值改变的回调器; 在更改了mCurrentY后调用
      */
@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import android.graphics.Paint;
+
+/**
+ * 滚轮每一行字体大小及基线位置的预计算表
+ * 将最小字体到最大字体之间的大小量化成固定的若干级，在视图尺寸变化时（onSizeChanged）一次性算好每一级的字体大小和基线偏移，
+ * 绘制时只需要查表；字体大小的种类有限，也能更好地利用系统的字形缓存
+ */
+class TextSizeTable {
+    // 字体大小量化的级数
+    private static final int LEVEL_COUNT = 16;
+
+    private final float[] mTextSizes = new float[LEVEL_COUNT];
+    // 文字垂直居中时基线相对于行中心的偏移
+    private final float[] mBaselineOffsets = new float[LEVEL_COUNT];
+    private final Paint.FontMetricsInt mFontMetrics = new Paint.FontMetricsInt();
+    private float mSmallTextSize;
+    private float mLargeTextSize;
+
+    /**
+     * 根据字体大小范围重新计算，会修改paint的字体大小
+     * @return 范围没有变化时不重新计算，返回false
+     */
+    boolean build(Paint paint, float smallTextSize, float largeTextSize) {
+        if (smallTextSize == mSmallTextSize && largeTextSize == mLargeTextSize) {
+            return false;
+        }
+        mSmallTextSize = smallTextSize;
+        mLargeTextSize = largeTextSize;
+        for (int level = 0; level < LEVEL_COUNT; level++) {
+            float textSize = (int) (smallTextSize + (largeTextSize - smallTextSize) * level / (LEVEL_COUNT - 1));
+            paint.setTextSize(textSize);
+            paint.getFontMetricsInt(mFontMetrics);
+            mTextSizes[level] = textSize;
+            mBaselineOffsets[level] = -(mFontMetrics.bottom + mFontMetrics.top) / 2f;
+        }
+        return true;
+    }
+
+    /**
+     * @param scale 字体缩放比例 0 则最小字体； 1 则最大的字体
+     * @return 对应的级别
+     */
+    int getLevel(double scale) {
+        int level = (int) Math.round(scale * (LEVEL_COUNT - 1));
+        if (level < 0) {
+            return 0;
+        }
+        if (level >= LEVEL_COUNT) {
+            return LEVEL_COUNT - 1;
+        }
+        return level;
+    }
+
+    float getTextSize(int level) {
+        return mTextSizes[level];
+    }
+
+    float getBaselineOffset(int level) {
+        return mBaselineOffsets[level];
+    }
+}
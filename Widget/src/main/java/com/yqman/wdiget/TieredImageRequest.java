@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * {@link ZoomImageView}分级加载的前两步：先在后台取得缩略图，再取得原图文件，每完成一步就在主线程回调一次
+ * 原图文件之后交给{@link RegionTileLoader}解码屏幕大小的底图和放大后的图块
+ * 除了后台加载以外的方法都只能在主线程调用
+ */
+class TieredImageRequest {
+    private static final String TAG = "TieredImageRequest";
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    // 所有实例共用，空闲时线程会退出；取原图文件可能需要下载，两个线程可以同时加载相邻的两页
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 主线程回调，请求取消后不会再回调
+     */
+    interface Callback {
+        void onThumbnailLoaded(Bitmap thumbnail);
+
+        void onImageFileLoaded(String filePath);
+
+        /**
+         * 原图文件加载失败（返回null或者抛出异常）
+         */
+        void onFailed();
+    }
+
+    private final ZoomImageView.TieredSource mSource;
+    private final Callback mCallback;
+    private Future<?> mFuture;
+    private volatile boolean mIsCancelled;
+
+    TieredImageRequest(ZoomImageView.TieredSource source, Callback callback) {
+        mSource = source;
+        mCallback = callback;
+    }
+
+    void start() {
+        mFuture = EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (mIsCancelled) {
+                    return;
+                }
+                Bitmap thumbnail = null;
+                try {
+                    thumbnail = mSource.loadThumbnail();
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    Log.w(TAG, "load thumbnail failed", e);
+                }
+                if (thumbnail != null) {
+                    final Bitmap result = thumbnail;
+                    MAIN_HANDLER.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!mIsCancelled) {
+                                mCallback.onThumbnailLoaded(result);
+                            }
+                        }
+                    });
+                }
+                if (mIsCancelled) {
+                    return;
+                }
+                final String filePath;
+                try {
+                    filePath = mSource.loadImageFile();
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "load image file failed", e);
+                    postFailed();
+                    return;
+                }
+                if (filePath == null) {
+                    postFailed();
+                    return;
+                }
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mIsCancelled) {
+                            mCallback.onImageFileLoaded(filePath);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void postFailed() {
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mIsCancelled) {
+                    mCallback.onFailed();
+                }
+            }
+        });
+    }
+
+    /**
+     * 取消后不会再回调；还未开始的任务不再执行，正在进行的加载会被中断
+     */
+    void cancel() {
+        mIsCancelled = true;
+        if (mFuture != null) {
+            mFuture.cancel(true);
+            mFuture = null;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import android.content.Context;
+import android.view.animation.DecelerateInterpolator;
+import android.widget.OverScroller;
+
+/**
+ * 滚轮的惯性滚动引擎
+ * 手指抬起后先按OverScroller的物理模型减速滑动，减速结束后进入对齐阶段，把滚轮停在最近的一项上
+ * 本身不持有任何线程，由调用方在每一帧的回调中调用{@link #computeScrollOffset()}推进
+ */
+class WheelScroller {
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_FLING = 1;
+    private static final int STATE_SNAP = 2;
+    // 对齐阶段最长的动画时间
+    private static final int MAX_SNAP_DURATION = 300;
+    // 对齐距离小于该值时直接停在目标位置
+    private static final float SNAP_THRESHOLD_PX = 0.5f;
+
+    private final OverScroller mScroller;
+    private int mState = STATE_IDLE;
+    private float mItemHeight;
+    private float mMinY;
+    private float mMaxY;
+    private float mCurrentY;
+    private float mTargetY;
+
+    WheelScroller(Context context) {
+        mScroller = new OverScroller(context, new DecelerateInterpolator());
+    }
+
+    /**
+     * 设置可滚动的范围以及每一项的高度，对齐阶段以itemHeight的整数倍作为停止位置
+     */
+    void setBounds(float minY, float maxY, float itemHeight) {
+        mMinY = minY;
+        mMaxY = maxY;
+        mItemHeight = itemHeight;
+    }
+
+    /**
+     * 以指定速度开始惯性滚动
+     * @param startY 当前位置
+     * @param velocity 速度 px/s，正值表示startY增大的方向
+     * @param minVelocity 小于该速度不进行惯性滚动，直接对齐
+     */
+    void fling(float startY, float velocity, float minVelocity) {
+        mScroller.forceFinished(true);
+        mCurrentY = startY;
+        if (Math.abs(velocity) < minVelocity) {
+            snap(startY);
+            return;
+        }
+        mState = STATE_FLING;
+        mScroller.fling(0, Math.round(startY), 0, Math.round(velocity), 0, 0,
+                toScrollerBound(mMinY), toScrollerBound(mMaxY));
+    }
+
+    /**
+     * 从startY开始对齐到最近的一项
+     */
+    void snap(float startY) {
+        mScroller.forceFinished(true);
+        mCurrentY = startY;
+        mTargetY = findSnapTarget(startY);
+        float distance = mTargetY - startY;
+        if (Math.abs(distance) < SNAP_THRESHOLD_PX) {
+            mCurrentY = mTargetY;
+            mState = STATE_IDLE;
+            return;
+        }
+        mState = STATE_SNAP;
+        int duration = (int) (MAX_SNAP_DURATION * Math.min(1f, Math.abs(distance) / mItemHeight));
+        mScroller.startScroll(0, Math.round(startY), 0, Math.round(distance), Math.max(duration, 1));
+    }
+
+    /**
+     * 每一帧调用一次，推进滚动位置
+     * @return true 表示滚动仍在进行，需要继续请求下一帧
+     */
+    boolean computeScrollOffset() {
+        if (mState == STATE_IDLE) {
+            return false;
+        }
+        if (mScroller.computeScrollOffset()) {
+            mCurrentY = mScroller.getCurrY();
+            if (mState == STATE_SNAP && mScroller.isFinished()) {
+                mCurrentY = mTargetY;
+                mState = STATE_IDLE;
+                return false;
+            }
+            return true;
+        }
+        if (mState == STATE_FLING) { // 减速结束，进入对齐阶段
+            snap(mScroller.getCurrY());
+            return mState != STATE_IDLE;
+        }
+        mCurrentY = mTargetY;
+        mState = STATE_IDLE;
+        return false;
+    }
+
+    float getCurrY() {
+        return mCurrentY;
+    }
+
+    boolean isFinished() {
+        return mState == STATE_IDLE;
+    }
+
+    /**
+     * 停止滚动，停留在当前位置
+     */
+    void abort() {
+        mScroller.forceFinished(true);
+        mState = STATE_IDLE;
+    }
+
+    private float findSnapTarget(float y) {
+        if (mItemHeight <= 0) {
+            return y;
+        }
+        float target = Math.round(y / mItemHeight) * mItemHeight;
+        if (target < mMinY) {
+            target = mMinY;
+        } else if (target > mMaxY) {
+            target = mMaxY;
+        }
+        return target;
+    }
+
+    private static int toScrollerBound(float bound) {
+        if (bound >= Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        if (bound <= Integer.MIN_VALUE) {
+            return Integer.MIN_VALUE;
+        }
+        return (int) bound;
+    }
+}
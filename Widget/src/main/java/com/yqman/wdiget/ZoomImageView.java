@@ -14,14 +14,29 @@
 
 package com.yqman.wdiget;
 
+import com.yqman.wdiget.util.DecodeExecutor;
+
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.AppCompatImageView;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.ViewConfiguration;
+import android.view.animation.AnimationUtils;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+import android.widget.OverScroller;
 
 /**
  * Created by yqman on 2016/6/13.
@@ -29,36 +44,106 @@ import android.view.MotionEvent;
  * 参考郭林博客：http://blog.csdn.net/guolin_blog/article/details/11100327
  * 但是相对于他添加了双击放大缩小功能，同时改善了他之前无法给该控件设置监听器的问题，继承自Imageview
  * 使得在使用的时候可以将其看成一个普通的ImageView，只不过它还具有放大缩小的功能
+ * 缩放、平移的计算在{@link ZoomTransform}中；手指抬起后按速度惯性滑动，到达边界时回弹，双击时以点击位置为中心动画放大或恢复，
+ * 动画都由每一帧的回调驱动；触摸事件（包括批量上报的历史采样点）先累积到{@link PendingGesture}中，每一帧只计算一次变换
+ * 超大图片可以通过{@link #setTiledImage(String)}使用分块模式，不需要把整张图片解码到内存中；打开失败时退回到按屏幕大小采样解码
+ * 通过{@link #setTieredSource(TieredSource)}分级加载：先显示缩略图，再换成屏幕大小的底图，放大后解码图块，换图时保持当前的缩放和偏移
+ * 普通模式下缩小显示时使用{@link MipmapPyramid}中对应的一级，放大超过每一级的阈值时换成更清晰的一级
+ * 开启{@link #setGestureContentLockEnabled(boolean)}后，手势过程中保持已经选定的清晰度级别和图块，缩放和平移的变化只作为
+ * canvas矩阵作用在这些内容上；只有清晰度级别变化或者已选定的内容不能覆盖整个View时才重新选定
  */
 public class ZoomImageView extends AppCompatImageView {
+    // 双击放大时相对于初始比例的倍数
+    private static final float DOUBLE_TAP_ZOOM_MULTIPLE = 2;
+    private static final int ZOOM_ANIMATION_DURATION = 250;
+    // 拖动时允许越过边界的最大距离
+    private static final float MAX_OVERSCROLL_DP = 48;
+    private static final Interpolator ZOOM_INTERPOLATOR = new DecelerateInterpolator();
 
-    private static final int INIT_STATE = 0;
-    private static final int ZOOM_IN = 1;
-    private static final int ZOOM_OUT = 2;
-    private static final int MOVE_STATE = 3;
-    private int mLocalState;
     private Bitmap mBitmap;
-    private Matrix mMatrix = new Matrix();
-    private float mTotalRatio;
-    private float mInitRatio;
-    /**
-     * 记录图片在矩阵上的横向偏移值，图片的左上角顶点在不做任何处理的情况下是显示在onLayout区域中的左上角位置的
-     * 如果图片的宽度小于屏幕宽度，那么该值必然大于0，因为要居中显示，
-     * 相反则该值必然小于0，目的同上
-     */
-    private float mTotalTranslateX;
-    /**
-     * 记录图片在矩阵上的纵向偏移值，具体内容同上
-     */
-    private float mTotalTranslateY;
+    // mBitmap的多级缩小图
+    private MipmapPyramid mPyramid;
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    // 分块模式下的图块加载器，为null时使用普通的Drawable
+    private RegionTileLoader mTileLoader;
+    private final Runnable mInvalidateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            invalidate();
+        }
+    };
+    private final Runnable mTileUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            onTileLoaderUpdated();
+        }
+    };
+    private final Runnable mTileFailedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            onTileLoaderFailed();
+        }
+    };
+    // 分块模式打开失败后整张解码的请求
+    private DecodeExecutor.Token mFallbackToken;
+    // 分级加载中缩略图和原图文件的加载请求，原图的底图解码完成前显示缩略图
+    private TieredImageRequest mTieredRequest;
+    // 分级加载的来源，原图的底图解码完成前保留，任何一步失败时通知它改用其他方式显示
+    private TieredSource mTieredSource;
+    private Bitmap mThumbnail;
     /**
-     * 记录当前图片的宽度，图片被缩放时，这个值会一起变动
+     * 原图的宽高，缩放比例和偏移值都是相对于原图的，分块模式下原图并不会整张解码
      */
-    private float mCurrentBitmapWidth;
+    private int mImageWidth;
+    private int mImageHeight;
+    private Matrix mMatrix = new Matrix();
+    // 当前的缩放比例和偏移值
+    private final ZoomTransform mTransform = new ZoomTransform();
+    // 手势过程中是否只把变化作为canvas矩阵作用在已选定的内容上
+    private boolean mIsGestureContentLockEnabled;
+    // 当前的变换与mDrawnRatio等之间的差异，绘制时先作用到canvas上
+    private boolean mHasDeltaTransform;
+    private float mDeltaScale;
+    private float mDeltaTranslateX;
+    private float mDeltaTranslateY;
     /**
-     * 记录当前图片的高度，图片被缩放时，这个值会一起变动
+     * 最近一次选定内容（清晰度级别、图块范围）时使用的缩放比例和偏移值；
+     * 锁定内容的模式下，当前值与它们之间的差异通过mDeltaScale等补上
      */
-    private float mCurrentBitmapHeight;
+    private float mDrawnRatio;
+    private float mDrawnTranslateX;
+    private float mDrawnTranslateY;
+
+    // 惯性滑动及回弹
+    private final OverScroller mScroller;
+    private VelocityTracker mVelocityTracker;
+    private final int mMinFlingVelocity;
+    private final int mMaxFlingVelocity;
+    private final int mTouchSlop;
+    private final int mDoubleTapSlop;
+    private final float mMaxOverscroll;
+    // 双击缩放动画的起止状态
+    private final ZoomTransform mAnimationStart = new ZoomTransform();
+    private final ZoomTransform mAnimationTarget = new ZoomTransform();
+    private boolean mIsZoomAnimating;
+    private long mZoomAnimationStartTime;
+    private final Runnable mAnimationFrameCallback = new Runnable() {
+        @Override
+        public void run() {
+            onAnimationFrame();
+        }
+    };
+    private boolean mIsAnimationFramePending;
+    // 还未应用的手势变化，每一帧应用一次
+    private final PendingGesture mPendingGesture = new PendingGesture();
+    private final Runnable mGestureFrameCallback = new Runnable() {
+        @Override
+        public void run() {
+            mIsGestureFramePending = false;
+            applyPendingGesture();
+        }
+    };
+    private boolean mIsGestureFramePending;
 
     public ZoomImageView(Context context) {
         this(context, null);
@@ -70,151 +155,342 @@ public class ZoomImageView extends AppCompatImageView {
 
     public ZoomImageView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
-        mLocalState = INIT_STATE;
+        mScroller = new OverScroller(context);
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mDoubleTapSlop = configuration.getScaledDoubleTapSlop();
+        mMaxOverscroll = MAX_OVERSCROLL_DP * getResources().getDisplayMetrics().density;
+    }
+
+    /**
+     * 使用分块模式显示超大图片：先显示一张低分辨率的底图，放大后只解码当前可见区域的图块
+     * 之后再调用setImageDrawable等方法会退出分块模式
+     * @param filePath 图片文件路径，BitmapRegionDecoder支持的格式（JPEG、PNG、WebP）才能分块，
+     *                 其他格式或者打开失败时按屏幕大小采样后整张显示
+     */
+    public void setTiledImage(@NonNull String filePath) {
+        setImageDrawable(null);
+        openTileLoader(filePath);
+        invalidate();
+    }
+
+    /**
+     * 分级加载图片：先显示缩略图，原图文件准备好后换成屏幕大小的底图，放大后再解码可见区域的图块
+     * 每次换图都保持用户当前的缩放和偏移；之后再调用setImageDrawable等方法或者{@link #cancelTieredLoad()}会取消加载
+     */
+    public void setTieredSource(@NonNull TieredSource source) {
+        setImageDrawable(null);
+        mTieredSource = source;
+        mTieredRequest = new TieredImageRequest(source, new TieredImageRequest.Callback() {
+            @Override
+            public void onThumbnailLoaded(Bitmap thumbnail) {
+                mThumbnail = thumbnail;
+                invalidate();
+            }
+
+            @Override
+            public void onImageFileLoaded(String filePath) {
+                mTieredRequest = null;
+                openTileLoader(filePath);
+            }
+
+            @Override
+            public void onFailed() {
+                mTieredRequest = null;
+                onTieredLoadFailed();
+            }
+        });
+        mTieredRequest.start();
+    }
+
+    /**
+     * 取消还未完成的分级加载（或者分块模式下的解码）并释放已经加载的图片，例如所在的页面被销毁时
+     */
+    public void cancelTieredLoad() {
+        if (mTieredRequest == null && mTileLoader == null && mThumbnail == null && mFallbackToken == null) {
+            return;
+        }
+        releaseTieredRequest();
+        releaseTileLoader();
+        cancelFallbackDecode();
+        invalidate();
+    }
+
+    private void openTileLoader(String filePath) {
+        mTileLoader = new RegionTileLoader(filePath, mTileUpdateRunnable, mTileFailedRunnable);
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        mTileLoader.open(metrics.widthPixels, metrics.heightPixels);
+    }
+
+    /**
+     * 分块模式打开失败（例如GIF等BitmapRegionDecoder不支持的格式）时：分级加载交给来源处理，
+     * 否则在后台按屏幕大小采样解码整张图片，作为普通图片显示
+     */
+    private void onTileLoaderFailed() {
+        final String filePath = mTileLoader.getPath();
+        releaseTileLoader();
+        if (mTieredSource != null) {
+            onTieredLoadFailed();
+            return;
+        }
+        final DisplayMetrics metrics = getResources().getDisplayMetrics();
+        mFallbackToken = DecodeExecutor.getInstance().execute(new DecodeExecutor.Job() {
+            @Override
+            public Bitmap decode() {
+                return decodeSampledFile(filePath, metrics.widthPixels, metrics.heightPixels);
+            }
+        }, DecodeExecutor.Priority.VISIBLE, null, new DecodeExecutor.Callback() {
+            @Override
+            public void onDecoded(@Nullable Bitmap bitmap) {
+                mFallbackToken = null;
+                if (bitmap != null) {
+                    setImageBitmap(bitmap);
+                } else {
+                    invalidate();
+                }
+            }
+        });
+        invalidate();
+    }
+
+    /**
+     * 分级加载失败，缩略图继续显示，直到来源设置了新的图片
+     */
+    private void onTieredLoadFailed() {
+        TieredSource source = mTieredSource;
+        mTieredSource = null;
+        invalidate();
+        source.onLoadFailed();
+    }
+
+    /**
+     * 按不超过指定大小的最大采样率（2的幂）解码，只在后台线程中调用
+     */
+    private static Bitmap decodeSampledFile(String filePath, int maxWidth, int maxHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(filePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int sampleSize = 1;
+        while (options.outWidth / sampleSize > maxWidth || options.outHeight / sampleSize > maxHeight) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeFile(filePath, options);
+    }
+
+    private void cancelFallbackDecode() {
+        if (mFallbackToken != null) {
+            mFallbackToken.cancel();
+            mFallbackToken = null;
+        }
+    }
+
+    /**
+     * 底图第一次解码完成时代替缩略图，缩放和偏移换算到原图的尺寸上，显示效果不变
+     */
+    private void onTileLoaderUpdated() {
+        if (mTileLoader != null && mTileLoader.isReady()) {
+            mTieredSource = null;
+        }
+        if (mThumbnail != null && mTileLoader != null && mTileLoader.isReady()) {
+            mThumbnail = null;
+            stopAnimation(); // 动画的起止状态是相对于缩略图的尺寸的
+            mImageWidth = mTileLoader.getImageWidth();
+            mImageHeight = mTileLoader.getImageHeight();
+            mTransform.replaceImage(mImageWidth, mImageHeight);
+            syncDrawnTransform();
+            clearDeltaTransform();
+        }
+        invalidate();
+    }
+
+    /**
+     * 开启后手势过程中锁定已选定的内容：不再每一帧都重新选择缩小图级别、计算可见图块和提交图块解码，而是把与上一次选定时之间的
+     * 缩放、平移差异作为canvas矩阵作用在已选定的内容上；手指抬起、清晰度级别变化或者已选定的内容不能覆盖整个View时才重新选定
+     * 每一帧仍然会重绘，省下的是选定内容的开销和手势过程中图块的反复解码；不使用硬件层，也不修改View的scale、translation属性，
+     * 不会与外部的属性动画或者PageTransformer冲突
+     * 默认关闭
+     */
+    public void setGestureContentLockEnabled(boolean enable) {
+        if (mIsGestureContentLockEnabled == enable) {
+            return;
+        }
+        mIsGestureContentLockEnabled = enable;
+        rebaseTransform();
+    }
+
+    @Override
+    public void setImageDrawable(@Nullable Drawable drawable) {
+        releaseTieredRequest();
+        releaseTileLoader();
+        cancelFallbackDecode();
+        releasePyramid();
+        if (mScroller != null) { // 父类的构造函数中也会调用，此时还未初始化
+            stopAnimation();
+            cancelPendingGesture();
+            clearDeltaTransform();
+            mTransform.reset();
+        }
+        super.setImageDrawable(drawable);
+    }
+
+    private void releasePyramid() {
+        if (mPyramid != null) {
+            mPyramid.release();
+            mPyramid = null;
+        }
+    }
+
+    private void releaseTieredRequest() {
+        if (mTieredRequest != null) {
+            mTieredRequest.cancel();
+            mTieredRequest = null;
+        }
+        mTieredSource = null;
+        mThumbnail = null;
+    }
+
+    private void releaseTileLoader() {
+        if (mTileLoader != null) {
+            mTileLoader.release();
+            mTileLoader = null;
+        }
     }
 
     @Override
     protected void onDetachedFromWindow() {
-        mLocalState = INIT_STATE;
+        stopAnimation();
+        cancelPendingGesture();
+        recycleVelocityTracker();
+        clearDeltaTransform();
+        mTransform.reset();
+        syncDrawnTransform();
+        releasePyramid(); // 再次显示时重新生成
         super.onDetachedFromWindow();
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
-        if (getDrawable() instanceof BitmapDrawable) {
+        if (mTileLoader != null && mTileLoader.isReady()) {
+            mImageWidth = mTileLoader.getImageWidth();
+            mImageHeight = mTileLoader.getImageHeight();
+        } else if (mThumbnail != null) { // 分级加载中，原图的底图还未解码完成
+            mImageWidth = mThumbnail.getWidth();
+            mImageHeight = mThumbnail.getHeight();
+        } else if (mTileLoader != null || mTieredRequest != null) { // 还在后台加载
+            return;
+        } else if (getDrawable() instanceof BitmapDrawable) {
             if (mBitmap != ((BitmapDrawable) getDrawable()).getBitmap()) {
                 mBitmap = ((BitmapDrawable) getDrawable()).getBitmap();
             }
+            if (mPyramid == null || mPyramid.getSource() != mBitmap) {
+                releasePyramid();
+                mPyramid = new MipmapPyramid(mBitmap, mInvalidateRunnable);
+            }
+            mImageWidth = mBitmap.getWidth();
+            mImageHeight = mBitmap.getHeight();
         } else {
             super.onDraw(canvas);
             return;
         }
-        switch (mLocalState) {
-            case INIT_STATE:
-                initDraw(canvas);
-                break;
-            case ZOOM_IN:
-                zoom(canvas);
-                break;
-            case ZOOM_OUT:
-                zoom(canvas);
-                break;
-            case MOVE_STATE:
-                moveDraw(canvas);
-                break;
+        if (mTransform.setSize(width, height, mImageWidth, mImageHeight)) { // 尺寸变化，恢复初始状态
+            stopAnimation();
+            syncDrawnTransform();
+            clearDeltaTransform();
+        }
+        if (!mHasDeltaTransform) {
+            drawImage(canvas);
+            return;
         }
+        int saveCount = canvas.save();
+        canvas.translate(mDeltaTranslateX, mDeltaTranslateY);
+        canvas.scale(mDeltaScale, mDeltaScale);
+        drawImage(canvas);
+        canvas.restoreToCount(saveCount);
     }
 
     /**
-     * 使用了Matrix的postTranslate和postScale方法，前者用于偏移,后者用于放大缩小
+     * 按最近一次选定的绘制变换绘制图片，锁定内容的模式下手势过程中的变化由调用方作用在canvas上
      */
-    private void initDraw(Canvas canvas) {
-        mMatrix.reset();
-        int bitmapWidth = mBitmap.getWidth();
-        int bitmapHeight = mBitmap.getHeight();
-        if (bitmapWidth > width || bitmapHeight > height) {
-            if (bitmapWidth - width > bitmapHeight - height) {
-                // 当图片宽度大于屏幕宽度时，将图片等比例压缩，使它可以完全显示出来
-                float ratio = width / (bitmapWidth * 1.0f);
-                mMatrix.postScale(ratio, ratio);
-                float translateY = (height - (bitmapHeight * ratio)) / 2f;
-                // 在纵坐标方向上进行偏移，以保证图片居中显示
-                mMatrix.postTranslate(0, translateY);
-                mTotalTranslateY = translateY;
-                mTotalRatio = mInitRatio = ratio;
-            } else {
-                // 当图片高度大于屏幕高度时，将图片等比例压缩，使它可以完全显示出来
-                float ratio = height / (bitmapHeight * 1.0f);
-                mMatrix.postScale(ratio, ratio);
-                float translateX = (width - (bitmapWidth * ratio)) / 2f;
-                // 在横坐标方向上进行偏移，以保证图片居中显示
-                mMatrix.postTranslate(translateX, 0);
-                mTotalTranslateX = translateX;
-                mTotalRatio = mInitRatio = ratio;
-            }
-            mCurrentBitmapWidth = bitmapWidth * mInitRatio;
-            mCurrentBitmapHeight = bitmapHeight * mInitRatio;
-        } else {
-            // 当图片的宽高都小于屏幕宽高时，图片放大
-            if (width - bitmapWidth < height - bitmapHeight) {
-                // 当图片宽度相对于高度更加接近屏幕边缘，将图片等比例放大，bitmap宽度扩充到屏幕边界
-                float ratio = width / (bitmapWidth * 1.0f);
-                mMatrix.postScale(ratio, ratio);
-                float translateY = (height - (bitmapHeight * ratio)) / 2f;
-                // 在纵坐标方向上进行偏移，以保证图片居中显示
-                mMatrix.postTranslate(0, translateY);
-                mTotalTranslateY = translateY;
-                mTotalRatio = mInitRatio = ratio;
-            } else {
-                // 当图片宽度相对于高度更加接近屏幕边缘，将图片等比例放大，bitmap宽度扩充到屏幕边界
-                float ratio = height / (bitmapHeight * 1.0f);
-                mMatrix.postScale(ratio, ratio);
-                float translateX = (width - (bitmapWidth * ratio)) / 2f;
-                // 在横坐标方向上进行偏移，以保证图片居中显示
-                mMatrix.postTranslate(translateX, 0);
-                mTotalTranslateX = translateX;
-                mTotalRatio = mInitRatio = ratio;
-            }
-            mCurrentBitmapWidth = bitmapWidth * mInitRatio;
-            mCurrentBitmapHeight = bitmapHeight * mInitRatio;
-        }
-        canvas.drawBitmap(mBitmap, mMatrix, null);
-    }
-
-    private void zoom(Canvas canvas) {
-        mMatrix.reset();
-        // 将图片按总缩放比例进行缩放
-        mMatrix.postScale(mTotalRatio, mTotalRatio);
-        float scaledWidth = mBitmap.getWidth() * mTotalRatio;
-        float scaledHeight = mBitmap.getHeight() * mTotalRatio;
-        float translateX;
-        float translateY;
-        // 如果当前图片宽度小于屏幕宽度，则按屏幕中心的横坐标进行水平缩放。否则按两指的中心点的横坐标进行水平缩放
-        if (mCurrentBitmapWidth < width) {
-            translateX = (width - scaledWidth) / 2f;
-        } else {
-            translateX = mTotalTranslateX * scaledRatio + centerPointX * (1 - scaledRatio);
-            // 进行边界检查，保证图片缩放后在水平方向上不会偏移出屏幕
-            if (translateX > 0) {
-                translateX = 0;
-            } else if (width - translateX > scaledWidth) {
-                translateX = width - scaledWidth;
-            }
+    private void drawImage(Canvas canvas) {
+        if (mTileLoader != null && mTileLoader.isReady()) {
+            mTileLoader.draw(canvas, mDrawnRatio, mDrawnTranslateX, mDrawnTranslateY, width, height);
+            return;
         }
-        // 如果当前图片高度小于屏幕高度，则按屏幕中心的纵坐标进行垂直缩放。否则按两指的中心点的纵坐标进行垂直缩放
-        if (mCurrentBitmapHeight < height) {
-            translateY = (height - scaledHeight) / 2f;
-        } else {
-            translateY = mTotalTranslateY * scaledRatio + centerPointY * (1 - scaledRatio);
-            // 进行边界检查，保证图片缩放后在垂直方向上不会偏移出屏幕
-            if (translateY > 0) {
-                translateY = 0;
-            } else if (height - translateY > scaledHeight) {
-                translateY = height - scaledHeight;
-            }
+        if (mThumbnail != null) {
+            mMatrix.setScale(mDrawnRatio, mDrawnRatio);
+            mMatrix.postTranslate(mDrawnTranslateX, mDrawnTranslateY);
+            canvas.drawBitmap(mThumbnail, mMatrix, mBitmapPaint);
+            return;
         }
-        // 缩放后对图片进行偏移，以保证缩放后中心点位置不变
-        mMatrix.postTranslate(translateX, translateY);
-        mTotalTranslateX = translateX;
-        mTotalTranslateY = translateY;
-        mCurrentBitmapWidth = scaledWidth;
-        mCurrentBitmapHeight = scaledHeight;
-        canvas.drawBitmap(mBitmap, mMatrix, null);
+        Bitmap level = mPyramid.getLevel(mDrawnRatio);
+        // 缩小图的每个像素对应原图的多个像素，缩放比例需要相应放大
+        mMatrix.setScale(mDrawnRatio * mImageWidth / level.getWidth(),
+                mDrawnRatio * mImageHeight / level.getHeight());
+        mMatrix.postTranslate(mDrawnTranslateX, mDrawnTranslateY);
+        canvas.drawBitmap(level, mMatrix, mBitmapPaint);
     }
 
-    private void moveDraw(Canvas canvas) {
-        mMatrix.reset();
-        // 根据手指移动的距离计算出总偏移值,进入这里之前已经对边界进行过判断了
-        float translateX = mTotalTranslateX + moveXDistance;
-        float translateY = mTotalTranslateY + moveYDistance;
-        // 先按照已有的缩放比例对图片进行缩放
-        mMatrix.postScale(mTotalRatio, mTotalRatio);
-        // 再根据移动距离进行偏移
-        mMatrix.postTranslate(translateX, translateY);
-        mTotalTranslateX = translateX;
-        mTotalTranslateY = translateY;
-        canvas.drawBitmap(mBitmap, mMatrix, null);
+    /**
+     * 缩放比例或者偏移值变化后调用：已选定的内容仍然可用时只更新作用在canvas上的差异，否则重新选定
+     */
+    private void onTransformChanged() {
+        float ratio = mTransform.getRatio();
+        if (!mIsGestureContentLockEnabled || mDrawnRatio <= 0
+                || getResolutionLevel(ratio) != getResolutionLevel(mDrawnRatio)) {
+            rebaseTransform();
+            return;
+        }
+        float scale = ratio / mDrawnRatio;
+        float translationX = mTransform.getTranslateX() - mDrawnTranslateX * scale;
+        float translationY = mTransform.getTranslateY() - mDrawnTranslateY * scale;
+        // 已选定的图块只覆盖选定时的View区域，变换后必须仍然覆盖整个View，否则露出的部分没有内容
+        if (translationX > 0.5f || translationY > 0.5f
+                || translationX + width * scale < width - 0.5f
+                || translationY + height * scale < height - 0.5f) {
+            rebaseTransform();
+            return;
+        }
+        mDeltaScale = scale;
+        mDeltaTranslateX = translationX;
+        mDeltaTranslateY = translationY;
+        mHasDeltaTransform = true;
+        invalidate();
+    }
+
+    /**
+     * 以当前的缩放比例和偏移值重新选定内容并绘制
+     */
+    private void rebaseTransform() {
+        syncDrawnTransform();
+        clearDeltaTransform();
+        invalidate();
+    }
+
+    private void syncDrawnTransform() {
+        mDrawnRatio = mTransform.getRatio();
+        mDrawnTranslateX = mTransform.getTranslateX();
+        mDrawnTranslateY = mTransform.getTranslateY();
+    }
 
+    private void clearDeltaTransform() {
+        mHasDeltaTransform = false;
+    }
+
+    /**
+     * 清晰度级别，级别不变时已经选定的内容可以直接缩放使用
+     */
+    private int getResolutionLevel(float ratio) {
+        if (mTileLoader != null && mTileLoader.isReady()) {
+            return RegionTileLoader.getSampleSize(ratio);
+        }
+        return mPyramid == null ? 0 : mPyramid.getLevelIndex(ratio);
     }
 
     private int width;
@@ -231,11 +507,15 @@ public class ZoomImageView extends AppCompatImageView {
     private double lastFingerDis;
     private float lastXMove = -1;
     private float lastYMove = -1;
-    private float moveXDistance;
-    private float moveYDistance;
-    private float scaledRatio;
     private boolean zoomEnableFlag = false;
-    private long lastActionDownTime = System.currentTimeMillis();
+    // 按下的位置，以及本次触摸是否已经超出了点击的范围
+    private float mDownX;
+    private float mDownY;
+    private boolean mIsDragging;
+    // 上一次点击抬起的时间和位置，用于判断双击
+    private long mLastTapTime;
+    private float mLastTapX;
+    private float mLastTapY;
 
     /**
      * ACTION_DOWN：这个很好理解，当屏幕检测到有手指按下之后就触发到这个事件。
@@ -255,6 +535,9 @@ public class ZoomImageView extends AppCompatImageView {
      */
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        if (!mTransform.isReady()) { // 图片还未显示
+            return super.onTouchEvent(event);
+        }
         /*
          * 下面的这段代码主要是针对ViewPager和ZoomImageView共同出现时事件冲突的代码。
          * ViewPager实现ViewGroup的onInterceptTouchEvent方法，该方法保证其能在ViewPager的childrenView
@@ -263,13 +546,17 @@ public class ZoomImageView extends AppCompatImageView {
          * onInterceptTouchEvent方法。
          * 参考链接：http://blog.csdn.net/guolin_blog/article/details/12646775
          */
-        if (mInitRatio == mTotalRatio) {
-            getParent().requestDisallowInterceptTouchEvent(false);
-        } else {
-            getParent().requestDisallowInterceptTouchEvent(true);
-        }
+        getParent().requestDisallowInterceptTouchEvent(mTransform.isZoomed());
+        addVelocityMovement(event);
         switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
+                stopAnimation(); // 按下时停止惯性滑动和缩放动画
+                cancelPendingGesture();
+                mDownX = event.getX(0);
+                mDownY = event.getY(0);
+                mIsDragging = false;
+                lastXMove = mDownX;
+                lastYMove = mDownY;
                 /*
                  * 尤其对于事件MotionEvent.ACTION_DOWN必须返回true否则无法再次接收到新的事件！
                  * 默认返回一个true，前者执行点击事件
@@ -280,11 +567,12 @@ public class ZoomImageView extends AppCompatImageView {
                     /* 当有两个手指按在屏幕上时，计算两指之间的距离*/
                     lastFingerDis = distanceBetweenFingers(event);
                     zoomEnableFlag = true;
+                    mIsDragging = true; // 多指操作不算点击
                 }
                 break; //不消耗该事件交给父类处理
             case MotionEvent.ACTION_POINTER_UP:
                 if (event.getPointerCount() == 2) {
-                    //手指离开屏幕时将临时值还原
+                    //手指离开屏幕时将临时值还原，剩下的手指下一次移动时重新记录位置
                     lastXMove = -1;
                     lastYMove = -1;
                     zoomEnableFlag = false;
@@ -295,86 +583,237 @@ public class ZoomImageView extends AppCompatImageView {
                 lastXMove = -1;
                 lastYMove = -1;
                 zoomEnableFlag = false;
-
-                long time = System.currentTimeMillis();
-                if (time - lastActionDownTime < 300) {
-                    lastActionDownTime = time;
-                    moveState();
+                applyPendingGesture(); // 惯性滑动需要从最终的位置开始
+                if (handleUp(event)) {
                     return true; //如果是双击操作则消耗该事件
                 }
-                lastActionDownTime = time;
                 break; //不是双击 交给父类处理事件
-
+            case MotionEvent.ACTION_CANCEL:
+                lastXMove = -1;
+                lastYMove = -1;
+                zoomEnableFlag = false;
+                applyPendingGesture();
+                recycleVelocityTracker();
+                startFling(0, 0); // 越界时回弹
+                break;
             case MotionEvent.ACTION_MOVE:
-                if (event.getPointerCount() == 1 && (mTotalRatio != mInitRatio)) {
-                    float xMove = event.getX();
-                    float yMove = event.getY();
+                if (event.getPointerCount() == 1) {
+                    float xMove = event.getX(0);
+                    float yMove = event.getY(0);
                     if (lastXMove == -1 || lastYMove == -1) {
                         lastYMove = yMove;
                         lastXMove = xMove;
                     }
-                    mLocalState = MOVE_STATE;
-                    moveXDistance = xMove - lastXMove;
-                    moveYDistance = yMove - lastYMove;
-                    //为了方便理解，可以将图片看成是放大的图片，即当前图片的宽度大于屏幕宽度，如果还居中显示，则totalTranslateX必然小于0
-                    if (mTotalTranslateX + moveXDistance > 0) {
-                        //证明已经显示了图片的左边界，对应totalTranslateX=0
-                        moveXDistance = 0;
-                    } else if (width - (mTotalTranslateX + moveXDistance) > mCurrentBitmapWidth) {
-                        //证明已经显示了图片的右边界，totalTranslateX + moveXDistance为左边隐藏的区域，
-                        // width为正在显示的区域，两者加起来大于当前图片宽度则证明到达右边界
-                        moveXDistance = 0;
+                    if (!mIsDragging && Math.hypot(xMove - mDownX, yMove - mDownY) > mTouchSlop) {
+                        mIsDragging = true;
                     }
-                    //纵坐标和横坐标原理一致，不再赘述
-                    if (mTotalTranslateY + moveYDistance > 0) {
-                        moveYDistance = 0;
-                    } else if (height - (mTotalTranslateY + moveYDistance) > mCurrentBitmapHeight) {
-                        moveYDistance = 0;
+                    if (mTransform.isZoomed()) {
+                        // 平移量只与首尾两个采样点有关，不需要逐个处理历史采样点
+                        mPendingGesture.translate(xMove - lastXMove, yMove - lastYMove);
+                        postGestureFrame();
+                        lastXMove = xMove;
+                        lastYMove = yMove;
+                        return true;
                     }
-                    // 调用onDraw()方法绘制图片
-                    invalidate();
                     lastXMove = xMove;
                     lastYMove = yMove;
-                    return true;
                 } else if (event.getPointerCount() == 2) {
-                    // 有两个手指按在屏幕上移动时，为缩放状态
-                    centerPointBetweenFingers(event);
-                    double fingerDis = distanceBetweenFingers(event);
-                    if (fingerDis > lastFingerDis) {
-                        mLocalState = ZOOM_OUT;
-                    } else {
-                        mLocalState = ZOOM_IN;
-                    }
-                    // 进行缩放倍数检查，最大只允许将图片放大4倍，最小可以缩小到初始化比例
-                    if ((mLocalState == ZOOM_OUT && mTotalRatio < 4 * mInitRatio)
-                            || (mLocalState == ZOOM_IN && mTotalRatio > mInitRatio)) {
-                        scaledRatio = (float) (fingerDis / lastFingerDis);
-                        mTotalRatio = mTotalRatio * scaledRatio;
-                        if (mTotalRatio > 4 * mInitRatio) {
-                            mTotalRatio = 4 * mInitRatio;
-                        } else if (mTotalRatio < mInitRatio) {
-                            mTotalRatio = mInitRatio;
-                        }
-                        // 调用onDraw()方法绘制图片
-                        invalidate();
-                        lastFingerDis = fingerDis;
+                    // 有两个手指按在屏幕上移动时，为缩放状态，以两指的中心点为焦点，最大只允许将图片放大4倍，最小可以缩小到初始化比例
+                    // 每个历史采样点的焦点不同，依次累积才能得到准确的结果
+                    final int historySize = event.getHistorySize();
+                    for (int pos = 0; pos < historySize; pos++) {
+                        float x0 = event.getHistoricalX(0, pos);
+                        float y0 = event.getHistoricalY(0, pos);
+                        float x1 = event.getHistoricalX(1, pos);
+                        float y1 = event.getHistoricalY(1, pos);
+                        accumulateZoom(Math.hypot(x0 - x1, y0 - y1), (x0 + x1) / 2, (y0 + y1) / 2);
                     }
+                    centerPointBetweenFingers(event);
+                    accumulateZoom(distanceBetweenFingers(event), centerPointX, centerPointY);
+                    postGestureFrame();
                     return true;
                 }
                 break;
             default:
                 break;
         }
-        return (zoomEnableFlag || (mTotalRatio != mInitRatio)) || super.onTouchEvent(event);
+        return (zoomEnableFlag || mTransform.isZoomed()) || super.onTouchEvent(event);
+    }
+
+    private void accumulateZoom(double fingerDis, float focusX, float focusY) {
+        if (lastFingerDis > 0 && fingerDis > 0) {
+            mPendingGesture.zoom((float) (fingerDis / lastFingerDis), focusX, focusY);
+        }
+        lastFingerDis = fingerDis;
+    }
+
+    private void postGestureFrame() {
+        if (!mIsGestureFramePending) {
+            mIsGestureFramePending = true;
+            ViewCompat.postOnAnimation(this, mGestureFrameCallback);
+        }
     }
 
     /**
-     * 双击恢复初始状态
+     * 把这一帧内累积的手势变化一次性应用到变换上
      */
-    private void moveState() {
-        if (mLocalState != INIT_STATE) {
-            mLocalState = INIT_STATE;
-            invalidate();
+    private void applyPendingGesture() {
+        if (mIsGestureFramePending) {
+            mIsGestureFramePending = false;
+            removeCallbacks(mGestureFrameCallback);
+        }
+        if (mPendingGesture.isEmpty()) {
+            return;
+        }
+        mPendingGesture.applyTo(mTransform, mMaxOverscroll); // 越过边界后有阻力，抬起手指时回弹
+        onTransformChanged();
+    }
+
+    private void cancelPendingGesture() {
+        if (mIsGestureFramePending) {
+            mIsGestureFramePending = false;
+            removeCallbacks(mGestureFrameCallback);
+        }
+        mPendingGesture.reset();
+    }
+
+    /**
+     * 手指抬起：双击时动画缩放，否则按抬起时的速度惯性滑动，越界时回弹
+     * @return 是否为双击
+     */
+    private boolean handleUp(MotionEvent event) {
+        float x = event.getX(0);
+        float y = event.getY(0);
+        if (!mIsDragging) {
+            long time = event.getEventTime();
+            if (time - mLastTapTime < ViewConfiguration.getDoubleTapTimeout()
+                    && Math.hypot(x - mLastTapX, y - mLastTapY) < mDoubleTapSlop) {
+                mLastTapTime = 0;
+                recycleVelocityTracker();
+                animateDoubleTapZoom(x, y);
+                return true;
+            }
+            mLastTapTime = time;
+            mLastTapX = x;
+            mLastTapY = y;
+        }
+        float velocityX = 0;
+        float velocityY = 0;
+        if (mVelocityTracker != null && mIsDragging) {
+            mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+            velocityX = mVelocityTracker.getXVelocity();
+            velocityY = mVelocityTracker.getYVelocity();
+        }
+        recycleVelocityTracker();
+        startFling(velocityX, velocityY);
+        return false;
+    }
+
+    private void addVelocityMovement(MotionEvent event) {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        mVelocityTracker.addMovement(event);
+    }
+
+    private void recycleVelocityTracker() {
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    /**
+     * 开始惯性滑动；越界时先回弹到边界，速度太小并且没有越界时直接结束手势
+     * @param velocityX 横向速度 px/s
+     */
+    private void startFling(float velocityX, float velocityY) {
+        int startX = Math.round(mTransform.getTranslateX());
+        int startY = Math.round(mTransform.getTranslateY());
+        int minX = (int) Math.floor(mTransform.getMinTranslateX());
+        int maxX = (int) Math.ceil(mTransform.getMaxTranslateX());
+        int minY = (int) Math.floor(mTransform.getMinTranslateY());
+        int maxY = (int) Math.ceil(mTransform.getMaxTranslateY());
+        boolean started;
+        if (mTransform.isOverscrolled()) {
+            started = mScroller.springBack(startX, startY, minX, maxX, minY, maxY);
+        } else if (mTransform.isZoomed() && Math.hypot(velocityX, velocityY) >= mMinFlingVelocity) {
+            int overX = maxX > minX ? (int) mMaxOverscroll : 0; // 图片比View窄时该方向不滑动
+            int overY = maxY > minY ? (int) mMaxOverscroll : 0;
+            mScroller.fling(startX, startY, (int) velocityX, (int) velocityY, minX, maxX, minY, maxY, overX, overY);
+            started = true;
+        } else {
+            started = false;
+        }
+        if (started) {
+            postAnimationFrame();
+        } else if (mHasDeltaTransform) { // 手势结束，按最终的变换重新选定内容
+            rebaseTransform();
+        }
+    }
+
+    /**
+     * 双击：放大状态下动画恢复到初始状态，否则以点击位置为中心动画放大
+     */
+    private void animateDoubleTapZoom(float focusX, float focusY) {
+        stopAnimation();
+        mAnimationStart.set(mTransform);
+        mAnimationTarget.set(mTransform);
+        if (mTransform.isZoomed()) {
+            mAnimationTarget.reset();
+        } else {
+            mAnimationTarget.zoomTo(mTransform.getMinRatio() * DOUBLE_TAP_ZOOM_MULTIPLE, focusX, focusY);
+        }
+        mIsZoomAnimating = true;
+        mZoomAnimationStartTime = AnimationUtils.currentAnimationTimeMillis();
+        postAnimationFrame();
+    }
+
+    private void postAnimationFrame() {
+        if (!mIsAnimationFramePending) {
+            mIsAnimationFramePending = true;
+            ViewCompat.postOnAnimation(this, mAnimationFrameCallback);
+        }
+    }
+
+    /**
+     * 停止惯性滑动和缩放动画，停在当前位置
+     */
+    private void stopAnimation() {
+        mIsZoomAnimating = false;
+        mScroller.forceFinished(true);
+        if (mIsAnimationFramePending) {
+            mIsAnimationFramePending = false;
+            removeCallbacks(mAnimationFrameCallback);
+        }
+    }
+
+    /**
+     * 每一帧推进一次缩放动画或者惯性滑动，结束后按最终的变换重新绘制
+     */
+    private void onAnimationFrame() {
+        mIsAnimationFramePending = false;
+        boolean running;
+        if (mIsZoomAnimating) {
+            float fraction = (AnimationUtils.currentAnimationTimeMillis() - mZoomAnimationStartTime)
+                    / (float) ZOOM_ANIMATION_DURATION;
+            if (fraction >= 1) {
+                fraction = 1;
+                mIsZoomAnimating = false;
+            }
+            mTransform.interpolate(mAnimationStart, mAnimationTarget, ZOOM_INTERPOLATOR.getInterpolation(fraction));
+            running = mIsZoomAnimating;
+        } else {
+            running = mScroller.computeScrollOffset();
+            if (running) {
+                mTransform.setTranslate(mScroller.getCurrX(), mScroller.getCurrY());
+            }
+        }
+        if (running) {
+            onTransformChanged();
+            postAnimationFrame();
+        } else {
+            rebaseTransform();
         }
     }
 
@@ -401,4 +840,28 @@ public class ZoomImageView extends AppCompatImageView {
         centerPointX = (xPoint0 + xPoint1) / 2;
         centerPointY = (yPoint0 + yPoint1) / 2;
     }
+
+    /**
+     * 分级加载的图片来源，两个方法都在后台线程中依次调用
+     */
+    public interface TieredSource {
+        /**
+         * @return 用于尽快显示的缩略图，宽高比需要和原图相同；没有时返回null
+         */
+        @Nullable
+        Bitmap loadThumbnail();
+
+        /**
+         * 可以在这里下载原图，加载被取消时线程会被中断
+         * @return 原图的本地文件路径；失败时返回null
+         */
+        @Nullable
+        String loadImageFile();
+
+        /**
+         * 主线程回调：原图文件加载失败，或者不是BitmapRegionDecoder支持的格式（例如GIF）而无法分块显示，
+         * 可以在这里改用普通方式加载图片；加载被取消后不会回调
+         */
+        void onLoadFailed();
+    }
 }
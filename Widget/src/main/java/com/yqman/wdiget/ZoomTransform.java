@@ -0,0 +1,231 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+/**
+ * {@link ZoomImageView}的缩放、平移计算，不依赖Android，可以直接在JVM上做单元测试
+ * 变换为 屏幕坐标 = 原图坐标 * ratio + translate；初始状态下图片等比例缩放到刚好完整显示并居中，
+ * 最大可以放大到初始比例的{@link #MAX_ZOOM_MULTIPLE}倍
+ * 图片的宽（高）小于View时该方向上始终居中，否则不允许露出图片以外的区域，拖动时可以有限地越界
+ */
+final class ZoomTransform {
+    static final float MAX_ZOOM_MULTIPLE = 4;
+
+    private int mViewWidth;
+    private int mViewHeight;
+    private int mImageWidth;
+    private int mImageHeight;
+    private float mMinRatio;
+    private float mRatio;
+    private float mTranslateX;
+    private float mTranslateY;
+
+    /**
+     * 尺寸有变化时恢复到初始状态
+     * @return 尺寸是否有变化
+     */
+    boolean setSize(int viewWidth, int viewHeight, int imageWidth, int imageHeight) {
+        if (viewWidth == mViewWidth && viewHeight == mViewHeight
+                && imageWidth == mImageWidth && imageHeight == mImageHeight) {
+            return false;
+        }
+        mViewWidth = viewWidth;
+        mViewHeight = viewHeight;
+        mImageWidth = imageWidth;
+        mImageHeight = imageHeight;
+        reset();
+        return true;
+    }
+
+    /**
+     * 换成同一张图片的另一种分辨率（宽高比相同），保持屏幕上的显示效果不变：
+     * 相对于初始比例的放大倍数和偏移值不变，只修正由于宽高取整带来的越界
+     * View的尺寸还未知时和{@link #setSize}一样恢复到初始状态
+     */
+    void replaceImage(int imageWidth, int imageHeight) {
+        if (imageWidth == mImageWidth && imageHeight == mImageHeight) {
+            return;
+        }
+        if (!isReady() || imageWidth <= 0 || imageHeight <= 0) {
+            mImageWidth = imageWidth;
+            mImageHeight = imageHeight;
+            reset();
+            return;
+        }
+        float zoomMultiple = mRatio / mMinRatio;
+        mImageWidth = imageWidth;
+        mImageHeight = imageHeight;
+        mMinRatio = Math.min(mViewWidth / (float) mImageWidth, mViewHeight / (float) mImageHeight);
+        mRatio = mMinRatio * zoomMultiple;
+        constrain();
+    }
+
+    /**
+     * View和图片的尺寸都已知时才能进行变换
+     */
+    boolean isReady() {
+        return mViewWidth > 0 && mViewHeight > 0 && mImageWidth > 0 && mImageHeight > 0;
+    }
+
+    /**
+     * 恢复到初始状态：等比例缩放到刚好完整显示，并且居中
+     */
+    void reset() {
+        if (!isReady()) {
+            mMinRatio = mRatio = 1;
+            mTranslateX = mTranslateY = 0;
+            return;
+        }
+        mMinRatio = Math.min(mViewWidth / (float) mImageWidth, mViewHeight / (float) mImageHeight);
+        mRatio = mMinRatio;
+        mTranslateX = getMinTranslateX();
+        mTranslateY = getMinTranslateY();
+    }
+
+    void set(ZoomTransform other) {
+        mViewWidth = other.mViewWidth;
+        mViewHeight = other.mViewHeight;
+        mImageWidth = other.mImageWidth;
+        mImageHeight = other.mImageHeight;
+        mMinRatio = other.mMinRatio;
+        mRatio = other.mRatio;
+        mTranslateX = other.mTranslateX;
+        mTranslateY = other.mTranslateY;
+    }
+
+    float getRatio() {
+        return mRatio;
+    }
+
+    float getMinRatio() {
+        return mMinRatio;
+    }
+
+    float getMaxRatio() {
+        return mMinRatio * MAX_ZOOM_MULTIPLE;
+    }
+
+    float getTranslateX() {
+        return mTranslateX;
+    }
+
+    float getTranslateY() {
+        return mTranslateY;
+    }
+
+    /**
+     * 是否处于放大状态
+     */
+    boolean isZoomed() {
+        return mRatio > mMinRatio;
+    }
+
+    /**
+     * 以屏幕上的焦点为中心缩放，焦点下的图片内容保持不动，之后修正边界
+     * @param scale 相对于当前比例的缩放倍数
+     */
+    void zoomBy(float scale, float focusX, float focusY) {
+        zoomTo(mRatio * scale, focusX, focusY);
+    }
+
+    /**
+     * 以屏幕上的焦点为中心缩放到指定比例，比例限制在[最小比例, 最大比例]之间，之后修正边界
+     */
+    void zoomTo(float ratio, float focusX, float focusY) {
+        float newRatio = clamp(ratio, getMinRatio(), getMaxRatio());
+        float scale = newRatio / mRatio;
+        mTranslateX = focusX - (focusX - mTranslateX) * scale;
+        mTranslateY = focusY - (focusY - mTranslateY) * scale;
+        mRatio = newRatio;
+        constrain();
+    }
+
+    /**
+     * 拖动图片；越过边界后阻力随越界距离增大，最多越界maxOverscroll
+     * @param maxOverscroll 允许越界的最大距离 px，为0时不允许越界
+     */
+    void translateBy(float dx, float dy, float maxOverscroll) {
+        mTranslateX = translateWithResistance(mTranslateX, dx, getMinTranslateX(), getMaxTranslateX(), maxOverscroll);
+        mTranslateY = translateWithResistance(mTranslateY, dy, getMinTranslateY(), getMaxTranslateY(), maxOverscroll);
+    }
+
+    void setTranslate(float translateX, float translateY) {
+        mTranslateX = translateX;
+        mTranslateY = translateY;
+    }
+
+    /**
+     * 把偏移值修正到边界以内
+     */
+    void constrain() {
+        mTranslateX = clamp(mTranslateX, getMinTranslateX(), getMaxTranslateX());
+        mTranslateY = clamp(mTranslateY, getMinTranslateY(), getMaxTranslateY());
+    }
+
+    boolean isOverscrolled() {
+        return mTranslateX < getMinTranslateX() || mTranslateX > getMaxTranslateX()
+                || mTranslateY < getMinTranslateY() || mTranslateY > getMaxTranslateY();
+    }
+
+    /**
+     * 图片宽度小于View时为居中的偏移值，否则为图片右边界对齐View右边界时的偏移值
+     */
+    float getMinTranslateX() {
+        float scaledWidth = mImageWidth * mRatio;
+        return scaledWidth <= mViewWidth ? (mViewWidth - scaledWidth) / 2f : mViewWidth - scaledWidth;
+    }
+
+    float getMaxTranslateX() {
+        float scaledWidth = mImageWidth * mRatio;
+        return scaledWidth <= mViewWidth ? (mViewWidth - scaledWidth) / 2f : 0;
+    }
+
+    float getMinTranslateY() {
+        float scaledHeight = mImageHeight * mRatio;
+        return scaledHeight <= mViewHeight ? (mViewHeight - scaledHeight) / 2f : mViewHeight - scaledHeight;
+    }
+
+    float getMaxTranslateY() {
+        float scaledHeight = mImageHeight * mRatio;
+        return scaledHeight <= mViewHeight ? (mViewHeight - scaledHeight) / 2f : 0;
+    }
+
+    /**
+     * 在两个变换之间插值，用于缩放动画；两者的尺寸需要相同
+     * @param fraction 0时等于from，1时等于to
+     */
+    void interpolate(ZoomTransform from, ZoomTransform to, float fraction) {
+        mRatio = from.mRatio + (to.mRatio - from.mRatio) * fraction;
+        mTranslateX = from.mTranslateX + (to.mTranslateX - from.mTranslateX) * fraction;
+        mTranslateY = from.mTranslateY + (to.mTranslateY - from.mTranslateY) * fraction;
+    }
+
+    private static float translateWithResistance(float translate, float delta, float min, float max,
+                                                 float maxOverscroll) {
+        float overscroll = translate < min ? min - translate : (translate > max ? translate - max : 0);
+        boolean outward = (translate <= min && delta < 0) || (translate >= max && delta > 0);
+        if (outward && maxOverscroll > 0) {
+            delta *= Math.max(0, 1 - overscroll / maxOverscroll);
+        }
+        return clamp(translate + delta, min - maxOverscroll, max + maxOverscroll);
+    }
+
+    private static float clamp(float value, float min, float max) {
+        if (value < min) {
+            return min;
+        }
+        return value > max ? max : value;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+/**
+ * {@link DrawableFactory}的两级缓存：内存中按字节数限制大小的LRU缓存解码后的Bitmap，
+ * 磁盘上（getCacheDir()/bitmap_cache）按字节数限制大小的LRU缓存裁剪、缩放等变换后的结果，进程重启后仍然有效
+ * key由原图、目标尺寸和变换链组成，见{@link #buildKey}；写入磁盘在后台线程中进行
+ * 缓存中的Bitmap会被多处共用，调用方不能修改或者回收；可以在任意线程调用，但读取磁盘的方法不要在主线程调用
+ */
+public final class BitmapCache {
+    private static final String TAG = "BitmapCache";
+    private static final String DISK_CACHE_DIR = "bitmap_cache";
+    private static final long DISK_CACHE_SIZE = 32 * 1024 * 1024;
+    private static final int JPEG_QUALITY = 95;
+    private static volatile BitmapCache sInstance;
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final File mDiskCacheDir;
+    // 只有一个线程，按提交顺序写入磁盘
+    private final ThreadPoolExecutor mDiskWriter;
+    private DiskLruCache mDiskCache;
+    private boolean mIsDiskCacheOpened;
+    private int mDiskHitCount;
+    private int mDiskMissCount;
+
+    private BitmapCache(Context context) {
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        mMemoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return BitmapPool.getAllocationByteCount(value);
+            }
+        };
+        mDiskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        mDiskWriter = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mDiskWriter.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 第一次调用时注册内存回调，之后返回同一个实例
+     */
+    public static BitmapCache getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            synchronized (BitmapCache.class) {
+                if (sInstance == null) {
+                    BitmapCache cache = new BitmapCache(context.getApplicationContext());
+                    context.getApplicationContext()
+                            .registerComponentCallbacks(new LruTrimCallbacks(cache.mMemoryCache));
+                    sInstance = cache;
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param source 唯一标识原图的字符串，例如资源ID或者文件路径加修改时间
+     * @param chain 对原图进行的变换，没有时为null
+     */
+    @NonNull
+    public static String buildKey(@NonNull String source, int width, int height, @Nullable TransformChain chain) {
+        String key = source + "@" + width + "x" + height;
+        return chain == null ? key : key + "#" + chain.getKey();
+    }
+
+    @Nullable
+    public Bitmap getFromMemory(@NonNull String key) {
+        return mMemoryCache.get(key);
+    }
+
+    /**
+     * 先查内存缓存，没有时从磁盘缓存中解码并放入内存缓存；会读取磁盘，不要在主线程调用
+     */
+    @Nullable
+    public Bitmap get(@NonNull String key) {
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        DiskLruCache diskCache = getDiskCache();
+        File file = diskCache == null ? null : diskCache.get(key);
+        if (file != null) {
+            bitmap = BitmapFactory.decodeFile(file.getPath());
+        }
+        synchronized (this) {
+            if (bitmap == null) {
+                mDiskMissCount++;
+                return null;
+            }
+            mDiskHitCount++;
+        }
+        mMemoryCache.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * 放入内存缓存
+     * @param toDisk 是否同时在后台写入磁盘缓存，一般只有变换或者缩小后的结果才需要
+     */
+    public void put(@NonNull final String key, @NonNull final Bitmap bitmap, boolean toDisk) {
+        mMemoryCache.put(key, bitmap);
+        if (!toDisk) {
+            return;
+        }
+        mDiskWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                DiskLruCache diskCache = getDiskCache();
+                if (diskCache == null || bitmap.isRecycled()) {
+                    return;
+                }
+                diskCache.put(key, new DiskLruCache.EntryWriter() {
+                    @Override
+                    public void write(OutputStream out) throws IOException {
+                        // 有透明度时需要无损的PNG，否则JPEG编码和解码都更快
+                        Bitmap.CompressFormat format = bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG
+                                : Bitmap.CompressFormat.JPEG;
+                        if (!bitmap.compress(format, JPEG_QUALITY, out)) {
+                            throw new IOException("compress failed: " + key);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    public int getMemoryHitCount() {
+        return mMemoryCache.hitCount();
+    }
+
+    public int getMemoryMissCount() {
+        return mMemoryCache.missCount();
+    }
+
+    public synchronized int getDiskHitCount() {
+        return mDiskHitCount;
+    }
+
+    public synchronized int getDiskMissCount() {
+        return mDiskMissCount;
+    }
+
+    /**
+     * @return 内存缓存的命中率
+     */
+    public float getMemoryHitRate() {
+        return getHitRate(getMemoryHitCount(), getMemoryMissCount());
+    }
+
+    /**
+     * @return 内存缓存未命中的请求中磁盘缓存的命中率
+     */
+    public synchronized float getDiskHitRate() {
+        return getHitRate(mDiskHitCount, mDiskMissCount);
+    }
+
+    public void clearMemory() {
+        mMemoryCache.evictAll();
+    }
+
+    private static float getHitRate(int hitCount, int missCount) {
+        int total = hitCount + missCount;
+        return total == 0 ? 0 : hitCount / (float) total;
+    }
+
+    /**
+     * 第一次使用时打开，需要重放日志，因此不在构造函数中进行；打开失败时不再使用磁盘缓存
+     */
+    private synchronized DiskLruCache getDiskCache() {
+        if (!mIsDiskCacheOpened) {
+            mIsDiskCacheOpened = true;
+            try {
+                mDiskCache = DiskLruCache.open(mDiskCacheDir, DISK_CACHE_SIZE);
+            } catch (IOException e) {
+                Log.w(TAG, "open disk cache failed", e);
+            }
+        }
+        return mDiskCache;
+    }
+}
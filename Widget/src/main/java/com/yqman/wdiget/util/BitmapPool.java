@@ -0,0 +1,259 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget.util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * 可复用Bitmap的缓存池，解码时通过BitmapFactory.Options.inBitmap复用，减少GC和native内存的反复分配
+ * 4.4及以上只要求复用的Bitmap分配的内存不小于需要的大小，按分配的字节数分组，取不小于需要大小的最小一组；
+ * 4.4以下要求宽高、格式完全相同、inSampleSize为1并且只支持JPEG和PNG，按宽高和格式分组
+ * 池中Bitmap的总字节数不超过预算，超出时回收最久未使用的；可以在任意线程调用
+ */
+public final class BitmapPool {
+    // 复用的Bitmap最多为需要大小的倍数，避免小图占用大块内存
+    private static final int MAX_SIZE_MULTIPLE = 2;
+    private static final BitmapPool INSTANCE = new BitmapPool(Runtime.getRuntime().maxMemory() / 16);
+
+    private final long mMaxBytes;
+    // 按分组的key存放，每组内先进先出
+    private final TreeMap<Long, ArrayDeque<Bitmap>> mGroups = new TreeMap<>();
+    // 池中所有的Bitmap及其分组的key，按放入的先后顺序，用于淘汰最久未使用的
+    private final LinkedHashMap<Bitmap, Long> mEntries = new LinkedHashMap<>();
+    private long mCurrentBytes;
+    private int mHitCount;
+    private int mMissCount;
+
+    BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    public static BitmapPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 放回不再使用的Bitmap，调用之后不能再使用它；不可变的、已回收的或者超出预算的直接回收
+     */
+    public void put(@Nullable Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int bytes = getAllocationByteCount(bitmap);
+        if (!bitmap.isMutable() || bytes > mMaxBytes / 2) {
+            bitmap.recycle();
+            return;
+        }
+        synchronized (this) {
+            if (mEntries.containsKey(bitmap)) {
+                return;
+            }
+            long key = getKey(bitmap);
+            ArrayDeque<Bitmap> group = mGroups.get(key);
+            if (group == null) {
+                group = new ArrayDeque<>();
+                mGroups.put(key, group);
+            }
+            group.addLast(bitmap);
+            mEntries.put(bitmap, key);
+            mCurrentBytes += bytes;
+            trimToSize(mMaxBytes);
+        }
+    }
+
+    /**
+     * 取一个指定宽高和格式的Bitmap，内容已经清空；没有合适的时新建
+     */
+    @NonNull
+    public Bitmap get(int width, int height, @NonNull Bitmap.Config config) {
+        Bitmap bitmap = take(width, height, config, getBytesPerPixel(config) * width * height);
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            reconfigure(bitmap, width, height, config);
+        }
+        bitmap.eraseColor(0);
+        return bitmap;
+    }
+
+    /**
+     * 在解码尺寸之后、解码像素之前调用：总是设置inMutable，以便结果以后可以放回池中；
+     * 有满足当前系统版本要求的Bitmap时设置为inBitmap
+     * 解码失败时需要调用{@link #onDecodeFailed(BitmapFactory.Options)}
+     * @param options 已经解码过尺寸并且设置好inSampleSize
+     */
+    public void prepareDecode(@NonNull BitmapFactory.Options options) {
+        options.inMutable = true;
+        options.inBitmap = null;
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return;
+        }
+        int sampleSize = Math.max(1, options.inSampleSize);
+        Bitmap.Config config = options.inPreferredConfig == null ? Bitmap.Config.ARGB_8888
+                : options.inPreferredConfig;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            boolean isScaled = options.inScaled && options.inDensity != 0 && options.inTargetDensity != 0
+                    && options.inDensity != options.inTargetDensity;
+            if (sampleSize != 1 || isScaled || !("image/jpeg".equals(options.outMimeType)
+                    || "image/png".equals(options.outMimeType))) {
+                synchronized (this) {
+                    mMissCount++;
+                }
+                return;
+            }
+        }
+        // 采样后的尺寸向上取整，宁可多要一点也不能不够
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        options.inBitmap = take(width, height, config, getBytesPerPixel(config) * width * height);
+    }
+
+    /**
+     * 设置了inBitmap的解码失败后调用，把inBitmap放回池中，之后可以不复用重新解码
+     */
+    public void onDecodeFailed(@NonNull BitmapFactory.Options options) {
+        Bitmap inBitmap = options.inBitmap;
+        options.inBitmap = null;
+        put(inBitmap);
+    }
+
+    /**
+     * @return 从池中取到可复用Bitmap的比例
+     */
+    public synchronized float getReuseRatio() {
+        int total = mHitCount + mMissCount;
+        return total == 0 ? 0 : mHitCount / (float) total;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * 池中Bitmap的总字节数
+     */
+    public synchronized long getSize() {
+        return mCurrentBytes;
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private synchronized Bitmap take(int width, int height, Bitmap.Config config, long bytes) {
+        Long key;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            key = mGroups.ceilingKey(bytes);
+            if (key != null && key > bytes * MAX_SIZE_MULTIPLE) {
+                key = null;
+            }
+        } else {
+            key = getExactKey(width, height, config);
+            if (!mGroups.containsKey(key)) {
+                key = null;
+            }
+        }
+        if (key == null) {
+            mMissCount++;
+            return null;
+        }
+        ArrayDeque<Bitmap> group = mGroups.get(key);
+        Bitmap bitmap = group.pollFirst();
+        if (group.isEmpty()) {
+            mGroups.remove(key);
+        }
+        mEntries.remove(bitmap);
+        mCurrentBytes -= getAllocationByteCount(bitmap);
+        mHitCount++;
+        return bitmap;
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<Bitmap, Long>> iterator = mEntries.entrySet().iterator();
+        while (mCurrentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Bitmap, Long> entry = iterator.next();
+            iterator.remove();
+            Bitmap bitmap = entry.getKey();
+            ArrayDeque<Bitmap> group = mGroups.get(entry.getValue());
+            group.remove(bitmap);
+            if (group.isEmpty()) {
+                mGroups.remove(entry.getValue());
+            }
+            mCurrentBytes -= getAllocationByteCount(bitmap);
+            bitmap.recycle();
+        }
+    }
+
+    private static long getKey(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return getAllocationByteCount(bitmap);
+        }
+        return getExactKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+    }
+
+    /**
+     * 宽高各占28位，格式占4位
+     */
+    private static long getExactKey(int width, int height, Bitmap.Config config) {
+        int configBits = config == null ? 0xF : config.ordinal();
+        return ((long) width << 32) | ((long) height << 4) | configBits;
+    }
+
+    /**
+     * Bitmap实际占用的内存，复用的Bitmap可能大于当前宽高需要的大小；缓存按字节数限制大小时也需要用它
+     */
+    static int getAllocationByteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void reconfigure(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height || bitmap.getConfig() != config) {
+            bitmap.reconfigure(width, height, config);
+        }
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Bitmap.Config.RGBA_F16) {
+            return 8;
+        }
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+}
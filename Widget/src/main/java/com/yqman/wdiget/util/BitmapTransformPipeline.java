@@ -0,0 +1,263 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget.util;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.widget.ImageView;
+
+/**
+ * 在后台线程池中执行{@link TransformChain}，结果在主线程回调
+ * 同一张原图、同一组变换同时只计算一次，所有等待的请求共用结果；请求都被取消后还未开始的计算直接丢弃，
+ * 进行中的计算在下一步变换之前停止
+ * 通过{@link #load(Bitmap, TransformChain, ImageView)}绑定到ImageView时，同一个ImageView再次加载（例如列表复用）
+ * 会自动取消之前的请求；除了后台计算以外的方法都只能在主线程调用
+ */
+public final class BitmapTransformPipeline {
+    private static final String TAG = "BitmapTransformPipeline";
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private static final int MAX_POOL_SIZE = 4;
+    private static BitmapTransformPipeline sInstance;
+
+    private final ThreadPoolExecutor mExecutor;
+    // 进行中的计算，key为原图及变换链
+    private final HashMap<TaskKey, Task> mTasks = new HashMap<>();
+    // 绑定到ImageView的请求，回调只弱引用ImageView，ImageView被回收后自动移除
+    private final WeakHashMap<ImageView, Request> mViewRequests = new WeakHashMap<>();
+
+    private BitmapTransformPipeline() {
+        // 变换都是CPU密集的，线程数不超过CPU核数，并且至少留一个核给主线程
+        int poolSize = Math.max(1, Math.min(MAX_POOL_SIZE, Runtime.getRuntime().availableProcessors() - 1));
+        mExecutor = new ThreadPoolExecutor(poolSize, poolSize, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @MainThread
+    public static BitmapTransformPipeline getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapTransformPipeline();
+        }
+        return sInstance;
+    }
+
+    /**
+     * 计算完成时在主线程回调，请求被取消后不会再回调
+     */
+    public interface Callback {
+        /**
+         * @param result 变换结果，失败时为null；相同的请求会收到同一个Bitmap，不能修改或者回收
+         */
+        void onTransformed(@Nullable Bitmap result);
+    }
+
+    /**
+     * 一次提交的请求，可以单独取消
+     */
+    public final class Request {
+        private final Task mTask;
+        private final Callback mCallback;
+        // 已经取消或者已经回调
+        private boolean mIsDone;
+
+        private Request(Task task, Callback callback) {
+            mTask = task;
+            mCallback = callback;
+        }
+
+        @MainThread
+        public void cancel() {
+            if (mIsDone) {
+                return;
+            }
+            mIsDone = true;
+            mTask.removeRequest(this);
+        }
+
+        /**
+         * @return 是否已经取消或者已经回调
+         */
+        public boolean isDone() {
+            return mIsDone;
+        }
+    }
+
+    /**
+     * 提交一个变换请求；原图在计算完成前不能被修改或者回收
+     */
+    @MainThread
+    @NonNull
+    public Request submit(@NonNull Bitmap source, @NonNull TransformChain chain, @NonNull Callback callback) {
+        TaskKey key = new TaskKey(source, chain.getKey());
+        Task task = mTasks.get(key);
+        if (task == null) {
+            task = new Task(key, source, chain);
+            mTasks.put(key, task);
+            mExecutor.execute(task);
+        }
+        Request request = new Request(task, callback);
+        task.mRequests.add(request);
+        return request;
+    }
+
+    /**
+     * 变换完成后设置到ImageView上，同一个ImageView之前未完成的请求会被取消
+     */
+    @MainThread
+    public void load(@NonNull Bitmap source, @NonNull TransformChain chain, @NonNull ImageView imageView) {
+        cancel(imageView);
+        // 强引用会使mViewRequests中的弱引用key永远不会被清除
+        final WeakReference<ImageView> viewRef = new WeakReference<>(imageView);
+        Request request = submit(source, chain, new Callback() {
+            @Override
+            public void onTransformed(@Nullable Bitmap result) {
+                ImageView view = viewRef.get();
+                if (view == null) {
+                    return;
+                }
+                mViewRequests.remove(view);
+                if (result != null) {
+                    view.setImageBitmap(result);
+                }
+            }
+        });
+        mViewRequests.put(imageView, request);
+    }
+
+    /**
+     * 取消ImageView上未完成的请求，例如列表项被回收或者页面被销毁时
+     */
+    @MainThread
+    public void cancel(@NonNull ImageView imageView) {
+        Request request = mViewRequests.remove(imageView);
+        if (request != null) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * 同一张原图（按对象判断，内容被修改后视为不同）和同一组变换
+     */
+    private static final class TaskKey {
+        private final Bitmap mSource;
+        private final int mGenerationId;
+        private final String mChainKey;
+
+        TaskKey(Bitmap source, String chainKey) {
+            mSource = source;
+            mGenerationId = source.getGenerationId();
+            mChainKey = chainKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TaskKey)) {
+                return false;
+            }
+            TaskKey other = (TaskKey) o;
+            return mSource == other.mSource && mGenerationId == other.mGenerationId
+                    && mChainKey.equals(other.mChainKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(mSource) * 31 + mGenerationId) * 31 + mChainKey.hashCode();
+        }
+    }
+
+    private final class Task implements Runnable, TransformChain.CancelSignal {
+        private final TaskKey mKey;
+        private final Bitmap mSource;
+        private final TransformChain mChain;
+        // 只在主线程中使用
+        private final ArrayList<Request> mRequests = new ArrayList<>(1);
+        private volatile boolean mIsCanceled;
+
+        Task(TaskKey key, Bitmap source, TransformChain chain) {
+            mKey = key;
+            mSource = source;
+            mChain = chain;
+        }
+
+        void removeRequest(Request request) {
+            mRequests.remove(request);
+            if (mRequests.isEmpty()) { // 没有请求在等待结果，不再需要计算
+                mIsCanceled = true;
+                if (mTasks.get(mKey) == this) {
+                    mTasks.remove(mKey);
+                }
+                mExecutor.remove(this);
+            }
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mIsCanceled;
+        }
+
+        @Override
+        public void run() {
+            Bitmap result = null;
+            if (!mIsCanceled && !mSource.isRecycled()) {
+                try {
+                    result = mChain.apply(mSource, this);
+                } catch (IllegalArgumentException | OutOfMemoryError e) {
+                    Log.w(TAG, "transform failed: " + mChain.getKey(), e);
+                }
+            }
+            final Bitmap transformed = result;
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(transformed);
+                }
+            });
+        }
+
+        private void deliver(Bitmap result) {
+            if (mIsCanceled) { // 没有请求会收到结果，放回缓存池复用
+                if (result != null && result != mSource) {
+                    BitmapPool.getInstance().put(result);
+                }
+                return;
+            }
+            mTasks.remove(mKey);
+            ArrayList<Request> requests = new ArrayList<>(mRequests);
+            mRequests.clear();
+            for (Request request : requests) {
+                request.mIsDone = true; // 回调中再取消其他请求不会有影响
+            }
+            for (Request request : requests) {
+                request.mCallback.onTransformed(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget.util;
+
+import java.lang.ref.WeakReference;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.support.annotation.NonNull;
+import android.support.v4.util.LruCache;
+
+/**
+ * 进程内共享的圆形裁剪结果缓存，{@link com.yqman.wdiget.CircleImageView}和{@link DrawableFactory}共用
+ * 以原图对象本身（不是内容）、原图的generationId和直径作为key，按字节数限制大小；系统内存紧张时自动释放
+ * {@link #getCroppedBitmap}返回的Bitmap会被多处共用，调用方不能修改或者回收；需要独占时使用{@link #copyCroppedBitmap}
+ * 可以在任意线程调用
+ */
+public final class CircleCropCache {
+    private static volatile CircleCropCache sInstance;
+
+    private final LruCache<CropKey, Bitmap> mCache;
+
+    private CircleCropCache() {
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE);
+        mCache = new LruCache<CropKey, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(CropKey key, Bitmap value) {
+                return BitmapPool.getAllocationByteCount(value);
+            }
+        };
+    }
+
+    /**
+     * 第一次调用时注册内存回调，之后返回同一个实例
+     */
+    public static CircleCropCache getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            synchronized (CircleCropCache.class) {
+                if (sInstance == null) {
+                    CircleCropCache cache = new CircleCropCache();
+                    context.getApplicationContext().registerComponentCallbacks(new LruTrimCallbacks(cache.mCache));
+                    sInstance = cache;
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 返回原图等比例缩放、居中裁剪后的圆形图片，不命中时计算并放入缓存
+     * @param diameter 圆形图片直径大小
+     */
+    public Bitmap getCroppedBitmap(@NonNull Bitmap source, int diameter) {
+        CropKey key = new CropKey(source, diameter);
+        Bitmap cropped = mCache.get(key);
+        if (cropped == null) {
+            cropped = cropCircle(source, diameter);
+            mCache.put(key, cropped);
+        }
+        return cropped;
+    }
+
+    /**
+     * 与{@link #getCroppedBitmap}的结果相同，但返回调用方独占的新Bitmap，可以修改或者回收
+     * 命中缓存时只复制像素，不命中时直接计算，结果不放入缓存
+     * @param diameter 圆形图片直径大小
+     */
+    public Bitmap copyCroppedBitmap(@NonNull Bitmap source, int diameter) {
+        Bitmap cropped = mCache.get(new CropKey(source, diameter));
+        if (cropped == null) {
+            return cropCircle(source, diameter);
+        }
+        return cropped.copy(cropped.getConfig(), true);
+    }
+
+    public int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    public int getMissCount() {
+        return mCache.missCount();
+    }
+
+    /**
+     * 当前缓存占用的字节数
+     */
+    public int getSize() {
+        return mCache.size();
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * 通过BitmapShader一次绘制完成缩放、居中裁剪和圆形遮罩，只需要输出的一张Bitmap，优先从{@link BitmapPool}中取
+     */
+    static Bitmap cropCircle(Bitmap source, int diameter) {
+        Bitmap output = BitmapPool.getInstance().get(diameter, diameter, Bitmap.Config.ARGB_8888);
+        BitmapShader shader = new BitmapShader(source, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        float scale = Math.max(diameter / (float) source.getWidth(), diameter / (float) source.getHeight());
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postTranslate((diameter - source.getWidth() * scale) / 2f,
+                (diameter - source.getHeight() * scale) / 2f);
+        shader.setLocalMatrix(matrix);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+        paint.setShader(shader);
+        new Canvas(output).drawCircle(diameter / 2f, diameter / 2f, diameter / 2f, paint);
+        return output;
+    }
+
+    /**
+     * 只弱引用原图，原图被回收后对应的缓存项不会再命中，最终被LRU淘汰
+     */
+    private static final class CropKey {
+        private final WeakReference<Bitmap> mSource;
+        private final int mGenerationId; // 原图内容被修改后会变化
+        private final int mDiameter;
+        private final int mHashCode;
+
+        CropKey(Bitmap source, int diameter) {
+            mSource = new WeakReference<>(source);
+            mGenerationId = source.getGenerationId();
+            mDiameter = diameter;
+            mHashCode = (System.identityHashCode(source) * 31 + mGenerationId) * 31 + diameter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CropKey)) {
+                return false;
+            }
+            CropKey other = (CropKey) o;
+            Bitmap source = mSource.get();
+            return source != null && source == other.mSource.get()
+                    && mGenerationId == other.mGenerationId && mDiameter == other.mDiameter;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget.util;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.view.View;
+
+/**
+ * {@link DrawableFactory}的异步解码线程池，线程数等于CPU核数
+ * 当前可见的请求优先于预加载的请求，同一优先级按提交顺序执行；结果在主线程回调
+ * 请求可以绑定到目标View上，同一个View再次提交（例如列表项被复用）时自动取消之前的请求；
+ * 已经开始的解码无法中断，完成后结果直接丢弃（结果可能来自{@link BitmapCache}，不能放回{@link BitmapPool}）；
+ * 除了后台解码以外的方法都只能在主线程调用
+ */
+public final class DecodeExecutor {
+    private static final String TAG = "DecodeExecutor";
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private static DecodeExecutor sInstance;
+
+    public enum Priority {
+        /**
+         * 当前可见的View需要的图片
+         */
+        VISIBLE,
+        /**
+         * 即将可见的预加载
+         */
+        PREFETCH
+    }
+
+    /**
+     * 在后台线程中执行的解码过程
+     */
+    public interface Job {
+        @Nullable
+        Bitmap decode();
+    }
+
+    /**
+     * 解码完成时在主线程回调，请求被取消后不会再回调
+     */
+    public interface Callback {
+        /**
+         * @param bitmap 解码结果，失败时为null
+         */
+        void onDecoded(@Nullable Bitmap bitmap);
+    }
+
+    private final ThreadPoolExecutor mExecutor;
+    // 用于同一优先级内按提交顺序执行
+    private final AtomicLong mSequence = new AtomicLong();
+    // 绑定到View的请求，Token只弱引用View，View被回收后自动移除（Callback也不能强引用View）
+    private final WeakHashMap<View, Token> mViewTokens = new WeakHashMap<>();
+
+    private DecodeExecutor() {
+        int poolSize = Math.max(1, Runtime.getRuntime().availableProcessors());
+        mExecutor = new ThreadPoolExecutor(poolSize, poolSize, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @MainThread
+    public static DecodeExecutor getInstance() {
+        if (sInstance == null) {
+            sInstance = new DecodeExecutor();
+        }
+        return sInstance;
+    }
+
+    /**
+     * 提交一个解码请求
+     * @param target 不为null时请求绑定到该View上，之前绑定的请求会被取消；只被弱引用，callback也不要强引用它，
+     *               否则View被回收前绑定不会自动解除
+     */
+    @MainThread
+    @NonNull
+    public Token execute(@NonNull Job job, @NonNull Priority priority, @Nullable View target,
+                         @NonNull Callback callback) {
+        if (target != null) {
+            cancel(target);
+        }
+        Token token = new Token(job, priority, mSequence.getAndIncrement(), target, callback);
+        if (target != null) {
+            mViewTokens.put(target, token);
+        }
+        mExecutor.execute(token);
+        return token;
+    }
+
+    /**
+     * 取消绑定到View上的请求，例如列表项被回收或者页面被销毁时
+     */
+    @MainThread
+    public void cancel(@NonNull View target) {
+        Token token = mViewTokens.remove(target);
+        if (token != null) {
+            token.cancel();
+        }
+    }
+
+    /**
+     * 一次解码请求，可以用来取消
+     */
+    public final class Token implements Runnable, Comparable<Token> {
+        private final Job mJob;
+        private final Priority mPriority;
+        private final long mSequence;
+        // 不能强引用，否则mViewTokens中的key永远不会被清除
+        private final WeakReference<View> mTarget;
+        private final Callback mCallback;
+        // 已经取消或者已经回调
+        private volatile boolean mIsDone;
+
+        private Token(Job job, Priority priority, long sequence, View target, Callback callback) {
+            mJob = job;
+            mPriority = priority;
+            mSequence = sequence;
+            mTarget = target == null ? null : new WeakReference<>(target);
+            mCallback = callback;
+        }
+
+        /**
+         * 还未开始的解码不再执行，已经开始的解码结果会被丢弃
+         */
+        @MainThread
+        public void cancel() {
+            if (mIsDone) {
+                return;
+            }
+            mIsDone = true;
+            mExecutor.remove(this);
+            unbindTarget();
+        }
+
+        private void unbindTarget() {
+            View target = mTarget == null ? null : mTarget.get();
+            if (target != null && mViewTokens.get(target) == this) {
+                mViewTokens.remove(target);
+            }
+        }
+
+        /**
+         * @return 是否已经取消或者已经回调
+         */
+        public boolean isDone() {
+            return mIsDone;
+        }
+
+        @Override
+        public int compareTo(@NonNull Token other) {
+            if (mPriority != other.mPriority) {
+                return mPriority.ordinal() - other.mPriority.ordinal();
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+
+        @Override
+        public void run() {
+            if (mIsDone) {
+                return;
+            }
+            Bitmap bitmap = null;
+            try {
+                bitmap = mJob.decode();
+            } catch (RuntimeException | OutOfMemoryError e) {
+                Log.w(TAG, "decode failed", e);
+            }
+            final Bitmap result = bitmap;
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mIsDone) { // 解码过程中被取消，结果没有人使用
+                        return;
+                    }
+                    mIsDone = true; // 之后再取消不会有影响
+                    unbindTarget();
+                    mCallback.onDecoded(result);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * 按总字节数限制大小的磁盘LRU缓存，每一项是目录下的一个文件，文件名为key的MD5
+ * 每次写入、读取和删除都追加一行到日志文件中并立即刷新，进程被杀死后重新打开时通过重放日志恢复LRU顺序；
+ * 日志中的冗余记录过多时重写日志。所有方法都会读写磁盘，不能在主线程调用
+ */
+final class DiskLruCache {
+    private static final String TAG = "DiskLruCache";
+    private static final String JOURNAL_FILE = "journal";
+    private static final String JOURNAL_FILE_TMP = "journal.tmp";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String PUT = "PUT";
+    private static final String READ = "READ";
+    private static final String DELETE = "DEL";
+    // 日志中冗余的行数超过该值之后重写日志
+    private static final int MAX_REDUNDANT_LINES = 2000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 把一项内容写入输出流
+     */
+    interface EntryWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    // 文件名到文件大小，按访问顺序排列，最前面的是最久未使用的
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(0, 0.75f, true);
+    private long mSize;
+    private Writer mJournalWriter;
+    // 日志的行数，减去有效项数即为冗余的行数
+    private int mJournalLines;
+
+    private DiskLruCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * 打开缓存目录，不存在时创建；重放日志并删除日志中没有记录的文件
+     */
+    static DiskLruCache open(File directory, long maxBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("create cache directory failed: " + directory);
+        }
+        DiskLruCache cache = new DiskLruCache(directory, maxBytes);
+        cache.readJournal();
+        cache.removeUntrackedFiles();
+        cache.rebuildJournal();
+        cache.trimToSize();
+        return cache;
+    }
+
+    /**
+     * @return 缓存的文件，不存在时返回null；读取期间可能被其他线程淘汰，调用方需要处理文件不存在的情况
+     */
+    synchronized File get(String key) {
+        String name = hashKey(key);
+        if (mEntries.get(name) == null) {
+            return null;
+        }
+        File file = new File(mDirectory, name);
+        if (!file.exists()) {
+            removeEntry(name);
+            return null;
+        }
+        appendJournal(READ, name, -1);
+        return file;
+    }
+
+    /**
+     * 先写入临时文件，完成后再替换，写入失败时不影响已有的内容
+     */
+    boolean put(String key, EntryWriter writer) {
+        String name = hashKey(key);
+        File tmpFile = new File(mDirectory, name + "." + Thread.currentThread().getId() + TMP_SUFFIX);
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tmpFile);
+            writer.write(out);
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            Log.w(TAG, "write entry failed", e);
+            closeQuietly(out);
+            deleteFile(tmpFile);
+            return false;
+        }
+        synchronized (this) {
+            File file = new File(mDirectory, name);
+            if (!tmpFile.renameTo(file)) {
+                deleteFile(tmpFile);
+                return false;
+            }
+            Long previous = mEntries.put(name, file.length());
+            if (previous != null) {
+                mSize -= previous;
+            }
+            mSize += file.length();
+            appendJournal(PUT, name, file.length());
+            trimToSize();
+        }
+        return true;
+    }
+
+    synchronized void remove(String key) {
+        String name = hashKey(key);
+        if (mEntries.containsKey(name)) {
+            removeEntry(name);
+        }
+    }
+
+    synchronized long getSize() {
+        return mSize;
+    }
+
+    private void removeEntry(String name) {
+        Long size = mEntries.remove(name);
+        if (size != null) {
+            mSize -= size;
+        }
+        deleteFile(new File(mDirectory, name));
+        appendJournal(DELETE, name, -1);
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            iterator.remove();
+            mSize -= entry.getValue();
+            deleteFile(new File(mDirectory, entry.getKey()));
+            appendJournal(DELETE, entry.getKey(), -1);
+        }
+    }
+
+    /**
+     * 逐行重放日志；最后一行可能因为进程被杀死而不完整，格式不对的行直接跳过
+     */
+    private void readJournal() {
+        File journal = new File(mDirectory, JOURNAL_FILE);
+        if (!journal.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length == 3 && PUT.equals(parts[0])) {
+                    try {
+                        mEntries.put(parts[1], Long.parseLong(parts[2]));
+                    } catch (NumberFormatException e) {
+                        // 不完整的一行
+                    }
+                } else if (parts.length == 2 && READ.equals(parts[0])) {
+                    mEntries.get(parts[1]);
+                } else if (parts.length == 2 && DELETE.equals(parts[0])) {
+                    mEntries.remove(parts[1]);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "read journal failed", e);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * 删除日志中有记录但文件已经不存在的项，以及目录下日志中没有记录的文件（例如写入过程中被杀死留下的临时文件）
+     */
+    private void removeUntrackedFiles() {
+        mSize = 0;
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            File file = new File(mDirectory, entry.getKey());
+            if (!file.exists()) {
+                iterator.remove();
+                continue;
+            }
+            entry.setValue(file.length());
+            mSize += file.length();
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!JOURNAL_FILE.equals(name) && !mEntries.containsKey(name)) {
+                deleteFile(file);
+            }
+        }
+    }
+
+    /**
+     * 按当前的LRU顺序重写一份只有PUT记录的日志
+     */
+    private void rebuildJournal() {
+        closeQuietly(mJournalWriter);
+        mJournalWriter = null;
+        File tmpJournal = new File(mDirectory, JOURNAL_FILE_TMP);
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpJournal), UTF_8));
+            for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(PUT + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+            writer.close();
+            writer = null;
+            File journal = new File(mDirectory, JOURNAL_FILE);
+            if (!tmpJournal.renameTo(journal)) {
+                throw new IOException("rename journal failed");
+            }
+            mJournalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), UTF_8));
+            mJournalLines = mEntries.size();
+        } catch (IOException e) {
+            Log.w(TAG, "rebuild journal failed", e);
+            closeQuietly(writer);
+        }
+    }
+
+    private void appendJournal(String op, String name, long size) {
+        if (mJournalWriter == null) {
+            return;
+        }
+        try {
+            mJournalWriter.write(size >= 0 ? op + " " + name + " " + size + "\n" : op + " " + name + "\n");
+            mJournalWriter.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "append journal failed", e);
+        }
+        mJournalLines++;
+        if (mJournalLines - mEntries.size() > MAX_REDUNDANT_LINES) {
+            rebuildJournal();
+        }
+    }
+
+    private static String hashKey(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] bytes = digest.digest(key.getBytes(UTF_8));
+            StringBuilder builder = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return String.valueOf(key.hashCode() & 0xFFFFFFFFL);
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "delete failed: " + file);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -15,23 +15,19 @@
 package com.yqman.wdiget.util;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Point;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
-import android.graphics.Rect;
 import android.net.Uri;
 import android.util.Log;
+import android.view.View;
 import android.view.WindowManager;
+import android.widget.ImageView;
 
 public class DrawableFactory {
     private static final String TAG = "DrawableFactory";
@@ -40,6 +36,8 @@ public class DrawableFactory {
     private Context context;
     private int screen_width;
     private int screen_height;
+    private BitmapPool bitmapPool = BitmapPool.getInstance();
+    private BitmapCache bitmapCache;
 
     private DrawableFactory(Context context) {
         this.context = context;
@@ -49,7 +47,7 @@ public class DrawableFactory {
         wm.getDefaultDisplay().getSize(outSize);
         screen_height = outSize.y;
         screen_width = outSize.x;
-
+        bitmapCache = BitmapCache.getInstance(context);
     }
 
     /**
@@ -58,31 +56,170 @@ public class DrawableFactory {
      * @param resID  资源ID
      * @param sample 压缩比例 如果压缩比例为2 原始图片高度宽度为200*400 最后得到的图片是一个100*200的图片
      *
-     * @return Bitmap值
+     * @return Bitmap值，由调用方独占，可以修改或者回收
      */
     public Bitmap getBitmapByScreenWidth(int resID, int sample) {
+        return screenWidthSource(resID, sample).getOwned();
+    }
+
+    /**
+     * 与{@link #getBitmapByScreenWidth(int, int)}相同，但结果缓存在{@link BitmapCache}的内存缓存中，不能修改或者回收
+     */
+    public Bitmap getCachedBitmapByScreenWidth(int resID, int sample) {
+        return screenWidthSource(resID, sample).getCached();
+    }
+
+    private CacheSource screenWidthSource(final int resID, int sample) {
+        final int size = screen_width / sample;
+        return new CacheSource(false) {
+            @Override
+            String buildKey() {
+                return BitmapCache.buildKey("res:" + resID, size, size, null);
+            }
+
+            @Override
+            Bitmap load() {
+                return decodeResource(resID, size, size);
+            }
+        };
+    }
+
+    /**
+     * @return Bitmap值，由调用方独占，可以修改或者回收
+     */
+    public Bitmap getBitmapByScreenWidth(String imgPath, int sample) {
+        return screenWidthSource(imgPath, sample).getOwned();
+    }
+
+    /**
+     * 与{@link #getBitmapByScreenWidth(String, int)}相同，但结果缓存在{@link BitmapCache}中，不能修改或者回收
+     * 只查内存缓存，磁盘缓存只在{@link #getBitmapByScreenWidthAsync(String, int, DecodeExecutor.Priority, View,
+     * DecodeExecutor.Callback)}中读取
+     */
+    public Bitmap getCachedBitmapByScreenWidth(String imgPath, int sample) {
+        return screenWidthSource(imgPath, sample).getCached();
+    }
+
+    private CacheSource screenWidthSource(final String imgPath, int sample) {
+        final int size = screen_width / sample;
+        return new CacheSource(true) {
+            @Override
+            String buildKey() {
+                return BitmapCache.buildKey(getFileSource(imgPath), size, size, null);
+            }
+
+            @Override
+            Bitmap load() {
+                return decodeFile(imgPath, size, size);
+            }
+        };
+    }
+
+    private Bitmap decodeResource(final int resID, int reqWidth, int reqHeight) {
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
         BitmapFactory.decodeResource(resources, resID, options);
-        options.inSampleSize = calculateInSampleSize(options, screen_width / sample, screen_width / sample);
-        options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeResource(resources, resID, options);
+        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        return decodeWithPool(options, new Decoder() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                return BitmapFactory.decodeResource(resources, resID, options);
+            }
+        });
     }
 
-    public Bitmap getBitmapByScreenWidth(String imgPath, int sample) {
+    private Bitmap decodeFile(final String imgPath, int reqWidth, int reqHeight) {
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
         BitmapFactory.decodeFile(imgPath, options);
-        options.inSampleSize = calculateInSampleSize(options, screen_width / sample, screen_width / sample);
-        options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeFile(imgPath, options);
+        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        return decodeWithPool(options, new Decoder() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                return BitmapFactory.decodeFile(imgPath, options);
+            }
+        });
+    }
+
+    /**
+     * 文件路径加上修改时间和大小，文件被修改后不会命中旧的缓存
+     */
+    private static String getFileSource(String imgPath) {
+        File file = new File(imgPath);
+        return "file:" + imgPath + ":" + file.lastModified() + ":" + file.length();
+    }
+
+    /**
+     * 一张可缓存的图片：在{@link BitmapCache}中的key，以及不命中时的解码方式
+     * 同步的方法只查内存缓存，磁盘缓存只在后台线程中读取
+     */
+    private abstract class CacheSource {
+        // 是否使用磁盘缓存，原图解码很慢或者经过了变换时才需要
+        private final boolean useDisk;
+        private String key;
+
+        CacheSource(boolean useDisk) {
+            this.useDisk = useDisk;
+        }
+
+        /**
+         * 文件的key需要读取修改时间和大小，第一次使用时才计算，异步的版本不会在主线程中读取
+         */
+        abstract String buildKey();
+
+        abstract Bitmap load();
+
+        private String getKey() {
+            if (key == null) {
+                key = buildKey();
+            }
+            return key;
+        }
+
+        /**
+         * 命中内存缓存时复制一份，不命中时直接解码，结果不放入缓存；返回的Bitmap由调用方独占
+         */
+        Bitmap getOwned() {
+            Bitmap cached = bitmapCache.getFromMemory(getKey());
+            if (cached != null) {
+                Bitmap copy = cached.copy(cached.getConfig(), true);
+                if (copy != null) {
+                    return copy;
+                }
+            }
+            return load();
+        }
+
+        /**
+         * 只查内存缓存，不命中时解码并放入缓存（磁盘缓存在后台写入）；返回的Bitmap会被多处共用
+         */
+        Bitmap getCached() {
+            Bitmap bitmap = bitmapCache.getFromMemory(getKey());
+            return bitmap != null ? bitmap : loadAndPut();
+        }
+
+        /**
+         * 依次查内存和磁盘缓存，不命中时解码并放入缓存；会读取磁盘，只在后台线程中调用
+         */
+        Bitmap getCachedFromDisk() {
+            Bitmap bitmap = useDisk ? bitmapCache.get(getKey()) : bitmapCache.getFromMemory(getKey());
+            return bitmap != null ? bitmap : loadAndPut();
+        }
+
+        private Bitmap loadAndPut() {
+            Bitmap bitmap = load();
+            if (bitmap != null) {
+                bitmapCache.put(getKey(), bitmap, useDisk);
+            }
+            return bitmap;
+        }
     }
 
     /**
      * @param bytes  需要解码bytes
      * @param sample 值如果小于1那么证明是不需要压缩的
      */
-    public Bitmap getBitmapByScreenWidth(byte[] bytes, int sample) {
+    public Bitmap getBitmapByScreenWidth(final byte[] bytes, int sample) {
         if (sample < 1) {
             return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
         } else {
@@ -90,11 +227,93 @@ public class DrawableFactory {
             options.inJustDecodeBounds = true;
             BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
             options.inSampleSize = calculateInSampleSize(options, screen_width / sample, screen_width / sample);
-            options.inJustDecodeBounds = false;
-            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+            return decodeWithPool(options, new Decoder() {
+                @Override
+                public Bitmap decode(BitmapFactory.Options options) {
+                    return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+                }
+            });
         }
     }
 
+    /**
+     * 第二遍解码像素，优先复用{@link BitmapPool}中的Bitmap，复用失败时不复用重新解码一次
+     *
+     * @param options 已经解码过尺寸并且设置好inSampleSize
+     */
+    private Bitmap decodeWithPool(BitmapFactory.Options options, Decoder decoder) {
+        options.inJustDecodeBounds = false;
+        bitmapPool.prepareDecode(options);
+        if (options.inBitmap == null) {
+            return decoder.decode(options);
+        }
+        try {
+            Bitmap bitmap = decoder.decode(options);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        } catch (IllegalArgumentException e) {
+            if (DEBUG) {
+                Log.d(TAG, "reuse bitmap failed", e);
+            }
+        }
+        bitmapPool.onDecodeFailed(options);
+        return decoder.decode(options);
+    }
+
+    private interface Decoder {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
+    /**
+     * 异步执行{@link #getCachedBitmapByScreenWidth(int, int)}，结果在主线程回调，不能修改或者回收
+     *
+     * @param target 绑定的View，同一个View再次请求时之前的请求会被取消，可以为null
+     */
+    public DecodeExecutor.Token getBitmapByScreenWidthAsync(int resID, int sample,
+                                                            DecodeExecutor.Priority priority, View target,
+                                                            DecodeExecutor.Callback callback) {
+        return executeCached(screenWidthSource(resID, sample), priority, target, callback);
+    }
+
+    /**
+     * 异步执行{@link #getCachedBitmapByScreenWidth(String, int)}，内存缓存不命中时还会读取磁盘缓存
+     * 结果在主线程回调，不能修改或者回收
+     *
+     * @param target 绑定的View，同一个View再次请求时之前的请求会被取消，可以为null
+     */
+    public DecodeExecutor.Token getBitmapByScreenWidthAsync(String imgPath, int sample,
+                                                            DecodeExecutor.Priority priority, View target,
+                                                            DecodeExecutor.Callback callback) {
+        return executeCached(screenWidthSource(imgPath, sample), priority, target, callback);
+    }
+
+    private DecodeExecutor.Token executeCached(final CacheSource source, DecodeExecutor.Priority priority,
+                                               View target, DecodeExecutor.Callback callback) {
+        return DecodeExecutor.getInstance().execute(new DecodeExecutor.Job() {
+            @Override
+            public Bitmap decode() {
+                return source.getCachedFromDisk();
+            }
+        }, priority, target, callback);
+    }
+
+    /**
+     * 异步执行{@link #getBitmapByScreenWidth(byte[], int)}，结果在主线程回调
+     *
+     * @param target 绑定的View，同一个View再次请求时之前的请求会被取消，可以为null
+     */
+    public DecodeExecutor.Token getBitmapByScreenWidthAsync(final byte[] bytes, final int sample,
+                                                            DecodeExecutor.Priority priority, View target,
+                                                            DecodeExecutor.Callback callback) {
+        return DecodeExecutor.getInstance().execute(new DecodeExecutor.Job() {
+            @Override
+            public Bitmap decode() {
+                return getBitmapByScreenWidth(bytes, sample);
+            }
+        }, priority, target, callback);
+    }
+
     /**
      * 根据预期的宽度和高度 计算需要压缩多少倍
      *
@@ -127,50 +346,144 @@ public class DrawableFactory {
 
     /**
      * 根据指定的宽度和高度 对目标图片进行压缩处理，保持原图片比例不变
+     * 返回的Bitmap由调用方独占，可以修改或者回收
      */
     public Bitmap getBitmapKeepScale(int resID, int width, int height) {
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeResource(resources, resID, options);
-        options.inSampleSize = calculateInSampleSize(options, width, height);
-        options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeResource(resources, resID, options);
+        return keepScaleSource(resID, width, height).getOwned();
+    }
+
+    /**
+     * 与{@link #getBitmapKeepScale(int, int, int)}相同，但结果缓存在{@link BitmapCache}的内存缓存中，不能修改或者回收
+     */
+    public Bitmap getCachedBitmapKeepScale(int resID, int width, int height) {
+        return keepScaleSource(resID, width, height).getCached();
+    }
+
+    private CacheSource keepScaleSource(final int resID, final int width, final int height) {
+        return new CacheSource(false) {
+            @Override
+            String buildKey() {
+                return BitmapCache.buildKey("res:" + resID, width, height, null);
+            }
+
+            @Override
+            Bitmap load() {
+                return decodeResource(resID, width, height);
+            }
+        };
     }
 
     /**
      * 返回的是指定的width和height比例
+     * 返回的Bitmap由调用方独占，可以修改或者回收
      */
     public Bitmap getBitmap(int resID, int width, int height) {
-        Bitmap bitmap = getBitmapByScreenWidth(resID, 1);
-        return getTrimBitmap(bitmap, width, height);
+        return trimSource(resID, width, height).getOwned();
     }
 
+    /**
+     * 与{@link #getBitmap(int, int, int)}相同，但裁剪后的结果缓存在{@link BitmapCache}中，不能修改或者回收
+     * 只查内存缓存，磁盘缓存只在异步的版本中读取
+     */
+    public Bitmap getCachedBitmap(int resID, int width, int height) {
+        return trimSource(resID, width, height).getCached();
+    }
+
+    private CacheSource trimSource(final int resID, final int width, final int height) {
+        return new CacheSource(true) {
+            @Override
+            String buildKey() {
+                return BitmapCache.buildKey("res:" + resID, screen_width, screen_width, getTrimChain(width, height));
+            }
+
+            @Override
+            Bitmap load() {
+                return getTrimBitmap(decodeResource(resID, screen_width, screen_width), width, height);
+            }
+        };
+    }
+
+    /**
+     * 返回的Bitmap由调用方独占，可以修改或者回收
+     */
     public Bitmap getBitmap(String filePath, int width, int height) {
-        Bitmap bitmap = getBitmap(filePath, width, height);
-        return getTrimBitmap(bitmap, width, height);
+        return trimSource(filePath, width, height).getOwned();
     }
 
     /**
-     * 根据指定width和height对Bitmap进行一次裁剪，使其不至于被拉伸后变形
+     * 与{@link #getBitmap(String, int, int)}相同，但裁剪后的结果缓存在{@link BitmapCache}中，不能修改或者回收
+     * 只查内存缓存，磁盘缓存只在异步的版本中读取
+     */
+    public Bitmap getCachedBitmap(String filePath, int width, int height) {
+        return trimSource(filePath, width, height).getCached();
+    }
+
+    private CacheSource trimSource(final String filePath, final int width, final int height) {
+        return new CacheSource(true) {
+            @Override
+            String buildKey() {
+                return BitmapCache.buildKey(getFileSource(filePath), screen_width, screen_width,
+                        getTrimChain(width, height));
+            }
+
+            @Override
+            Bitmap load() {
+                return getTrimBitmap(decodeFile(filePath, screen_width, screen_width), width, height);
+            }
+        };
+    }
+
+    private static TransformChain getTrimChain(int width, int height) {
+        return new TransformChain.Builder().trim(width, height).build();
+    }
+
+    /**
+     * 异步执行{@link #getCachedBitmapKeepScale(int, int, int)}，结果在主线程回调，不能修改或者回收
+     *
+     * @param target 绑定的View，同一个View再次请求时之前的请求会被取消，可以为null
+     */
+    public DecodeExecutor.Token getBitmapKeepScaleAsync(int resID, int width, int height,
+                                                        DecodeExecutor.Priority priority, View target,
+                                                        DecodeExecutor.Callback callback) {
+        return executeCached(keepScaleSource(resID, width, height), priority, target, callback);
+    }
+
+    /**
+     * 异步执行{@link #getCachedBitmap(int, int, int)}，内存缓存不命中时还会读取磁盘缓存
+     * 结果在主线程回调，不能修改或者回收
+     *
+     * @param target 绑定的View，同一个View再次请求时之前的请求会被取消，可以为null
+     */
+    public DecodeExecutor.Token getBitmapAsync(int resID, int width, int height,
+                                               DecodeExecutor.Priority priority, View target,
+                                               DecodeExecutor.Callback callback) {
+        return executeCached(trimSource(resID, width, height), priority, target, callback);
+    }
+
+    /**
+     * 异步执行{@link #getCachedBitmap(String, int, int)}，内存缓存不命中时还会读取磁盘缓存
+     * 结果在主线程回调，不能修改或者回收
+     *
+     * @param target 绑定的View，同一个View再次请求时之前的请求会被取消，可以为null
+     */
+    public DecodeExecutor.Token getBitmapAsync(String filePath, int width, int height,
+                                               DecodeExecutor.Priority priority, View target,
+                                               DecodeExecutor.Callback callback) {
+        return executeCached(trimSource(filePath, width, height), priority, target, callback);
+    }
+
+    /**
+     * 根据指定width和height对Bitmap进行一次裁剪，使其不至于被拉伸后变形；裁剪前的Bitmap放回{@link BitmapPool}
      */
     private Bitmap getTrimBitmap(Bitmap bitmap, int width, int height) {
-        int bt_height = bitmap.getHeight();
-        int bt_width = bitmap.getWidth();
-        int bt_widthStart = 0;
-        int bt_heightStart = 0;
-        float scale = (float) width / height;
-        float scaleTmp = (float) bt_width / bt_height;
-        if (scaleTmp > scale) {  //Bitmap的宽度超标，需要裁剪，取中间部分
-            int tmp = (int) (scale * bt_height);
-            bt_widthStart = (bt_width - tmp) / 2;
-            bt_width = tmp;
-        } else { //Bitmap的高度超标，需要裁剪，取中间部分
-            int tmp = (int) (bt_width / scale);
-            bt_heightStart = (bt_height - tmp) / 2;
-            bt_height = tmp;
+        if (bitmap == null) {
+            return null;
+        }
+        Bitmap trimmed = TransformChain.trim(bitmap, width, height);
+        if (trimmed != bitmap) {
+            bitmapPool.put(bitmap);
         }
-        bitmap = Bitmap.createBitmap(bitmap, bt_widthStart, bt_heightStart, bt_width, bt_height);
-        return bitmap;
+        return trimmed;
     }
 
     /**
@@ -179,62 +492,69 @@ public class DrawableFactory {
      * @param bmp    初始Bitmap对象
      * @param radius 圆形图片直径大小
      *
-     * @return 返回一个圆形的缩放裁剪过后的Bitmap对象
+     * @return 返回一个圆形的缩放裁剪过后的Bitmap对象，由调用方独占，可以修改或者回收
      */
     public Bitmap getCroppedBitmap(Bitmap bmp, int radius) {
-        Bitmap tmpBitmap;
-        if (bmp.getWidth() != radius || bmp.getHeight() != radius) {
-            bmp = getTrimBitmap(bmp, radius, radius);
-            tmpBitmap = Bitmap.createScaledBitmap(bmp, radius, radius, false);
-            /*
-             * 这个方法很酷炫，你可以忽略bmp的大小，然后给定后面的width和height系统就会返回你想要的大小的bitmap
-             * 底层是通过对图片进行拉伸处理，因此如果原图和目标图形比例差距过大容易导致图片变形。
-             * 注意：它不会裁剪只是拉伸,因此我们使用getTrimBitmap方法进行了预先的裁剪
-             */
-        } else {
-            tmpBitmap = bmp;
-        }
-        Bitmap output = Bitmap.createBitmap(tmpBitmap.getWidth(), tmpBitmap.getHeight(),
-                Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(output);
-
-        final Paint paint = new Paint();
-        final Rect rect = new Rect(0, 0, tmpBitmap.getWidth(), tmpBitmap.getHeight());//tmpBitmap是预期大小的Bitmap
+        return CircleCropCache.getInstance(context).copyCroppedBitmap(bmp, radius);
+    }
 
-        paint.setAntiAlias(true); //消除锯齿
-        paint.setFilterBitmap(true); //对位图进行滤波处理
+    /**
+     * 与{@link #getCroppedBitmap(Bitmap, int)}相同，但结果缓存在{@link CircleCropCache}中，同一张图片同样的直径只计算一次
+     *
+     * @return 返回的Bitmap对象会被多处共用，不能修改或者回收
+     */
+    public Bitmap getCachedCroppedBitmap(Bitmap bmp, int radius) {
+        return CircleCropCache.getInstance(context).getCroppedBitmap(bmp, radius);
+    }
 
-        paint.setDither(true);
-        paint.setColor(Color.parseColor("#BAB399")); //画笔的颜色
+    /**
+     * 在{@link BitmapTransformPipeline}的后台线程中执行{@link #getCroppedBitmap(Bitmap, int)}，结果在主线程回调
+     * 同一张图片同样的直径同时只计算一次，结果会被多处共用，不能修改或者回收；原图在回调前不能被修改或者回收
+     *
+     * @return 可以用来取消的请求，取消后不会再回调
+     */
+    public BitmapTransformPipeline.Request getCroppedBitmapAsync(Bitmap bmp, int radius,
+                                                                 BitmapTransformPipeline.Callback callback) {
+        return BitmapTransformPipeline.getInstance().submit(bmp, circleCropChain(radius), callback);
+    }
 
-        canvas.drawARGB(0, 0, 0, 0);//alpha无色透明
-        canvas.drawCircle(tmpBitmap.getWidth() / 2 + 0.7f,
-                tmpBitmap.getHeight() / 2 + 0.7f, tmpBitmap.getWidth() / 2 + 0.1f, paint);//x、y坐标 半径 画笔
+    /**
+     * 在后台裁剪后设置到imageView上，同一个imageView之前未完成的请求会被取消
+     */
+    public void loadCroppedBitmap(Bitmap bmp, int radius, ImageView imageView) {
+        BitmapTransformPipeline.getInstance().load(bmp, circleCropChain(radius), imageView);
+    }
 
-        //核心部分，设置两张图片的相交模式，在这里就是上面绘制的Circle和下面绘制的Bitmap
-        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));//混合模式
-        canvas.drawBitmap(tmpBitmap, rect, rect, paint);
-        return output;
+    private static TransformChain circleCropChain(int diameter) {
+        return new TransformChain.Builder().circleCrop(diameter).build();
     }
 
     /**
+     * 通过{@link ShareImageStore}保存，同一张图片只编码一次；会阻塞直到保存完成，尽量使用异步的版本
+     *
      * @param bmp 操作的bitmap目标文件
      *
-     * @return 返回当前bitmap的对应filePath得到的Uri
+     * @return 返回当前bitmap的对应filePath得到的Uri，失败时为null
      */
     public Uri getLocalBitmapUri(Bitmap bmp) {
-        // Store image to default external storage directory
-        Uri bmpUri = null;
         try {
-            File file = new File(context.getCacheDir(),
-                    "share_image_" + System.currentTimeMillis() + ".png");
-            FileOutputStream out = new FileOutputStream(file);
-            bmp.compress(Bitmap.CompressFormat.PNG, 90, out);
-            out.close();
-            bmpUri = Uri.fromFile(file);
-        } catch (IOException e) {
-            e.printStackTrace();
+            return getLocalBitmapUriAsync(bmp, null).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "save share image failed", e);
         }
-        return bmpUri;
+        return null;
+    }
+
+    /**
+     * 在后台保存图片，保存完成前bmp不能被修改或者回收
+     *
+     * @param callback 不为null时在主线程回调结果
+     *
+     * @return 可以用来等待结果的Future
+     */
+    public Future<Uri> getLocalBitmapUriAsync(Bitmap bmp, ShareImageStore.Callback callback) {
+        return ShareImageStore.getInstance(context).save(bmp, callback);
     }
 }
\ No newline at end of file
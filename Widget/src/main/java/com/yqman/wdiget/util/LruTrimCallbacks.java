@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget.util;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.support.v4.util.LruCache;
+
+/**
+ * 系统内存紧张时释放LruCache：进程在后台并且可能很快被杀死时全部释放，其他情况下释放一半
+ * 注册到ApplicationContext上，与缓存的生命周期相同
+ */
+final class LruTrimCallbacks implements ComponentCallbacks2 {
+    private final LruCache<?, ?> mCache;
+
+    LruTrimCallbacks(LruCache<?, ?> cache) {
+        mCache = cache;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) { // 进程在后台并且可能很快被杀死
+            mCache.evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW
+                || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            mCache.trimToSize(mCache.size() / 2);
+        }
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    @Override
+    public void onLowMemory() {
+        mCache.evictAll();
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+/**
+ * 分享图片的本地存储，位于getCacheDir()/share_images
+ * 文件名是像素内容的MD5，同一张图片多次分享只编码一次；编码和写入都在后台线程中进行，结果通过Future或者主线程回调返回
+ * 所有文件的总大小超过上限时删除最久未使用的（按修改时间，命中时更新）
+ */
+public final class ShareImageStore {
+    private static final String TAG = "ShareImageStore";
+    private static final String DIRECTORY = "share_images";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final long DEFAULT_MAX_BYTES = 20 * 1024 * 1024;
+    private static final int DEFAULT_QUALITY = 90;
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private static volatile ShareImageStore sInstance;
+
+    /**
+     * 保存完成时在主线程回调
+     */
+    public interface Callback {
+        /**
+         * @param uri 图片文件的Uri，失败时为null
+         */
+        void onSaved(@Nullable Uri uri);
+    }
+
+    private final File mDirectory;
+    // 只有一个线程，写入和淘汰不会并发
+    private final ThreadPoolExecutor mExecutor;
+    private volatile Bitmap.CompressFormat mFormat;
+    private volatile int mQuality = DEFAULT_QUALITY;
+    private volatile long mMaxBytes = DEFAULT_MAX_BYTES;
+
+    private ShareImageStore(Context context) {
+        mDirectory = new File(context.getCacheDir(), DIRECTORY);
+        mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static ShareImageStore getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            synchronized (ShareImageStore.class) {
+                if (sInstance == null) {
+                    sInstance = new ShareImageStore(context.getApplicationContext());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 设置编码格式，JPEG和WEBP比PNG编码快得多，文件也更小
+     * @param format 为null时自动选择：有透明度时用PNG，否则用JPEG
+     * @param quality 有损格式的质量 0~100
+     */
+    public void setFormat(@Nullable Bitmap.CompressFormat format, int quality) {
+        mFormat = format;
+        mQuality = Math.max(0, Math.min(100, quality));
+    }
+
+    /**
+     * 设置所有文件的总大小上限，下一次保存时生效
+     */
+    public void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * 在后台保存图片；保存完成前bitmap不能被修改或者回收
+     * @param callback 不为null时在主线程回调结果
+     * @return 可以用来等待结果，失败时结果为null
+     */
+    @NonNull
+    public Future<Uri> save(@NonNull final Bitmap bitmap, @Nullable final Callback callback) {
+        return mExecutor.submit(new Callable<Uri>() {
+            @Override
+            public Uri call() {
+                Uri result = null;
+                try {
+                    result = saveInternal(bitmap);
+                } catch (RuntimeException | OutOfMemoryError e) { // 例如保存过程中bitmap被回收
+                    Log.w(TAG, "save share image failed", e);
+                }
+                final Uri uri = result;
+                if (callback != null) {
+                    MAIN_HANDLER.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onSaved(uri);
+                        }
+                    });
+                }
+                return uri;
+            }
+        });
+    }
+
+    private Uri saveInternal(Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return null;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "create directory failed: " + mDirectory);
+            return null;
+        }
+        Bitmap.CompressFormat format = mFormat;
+        if (format == null) {
+            format = bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+        }
+        int quality = mQuality;
+        File file = new File(mDirectory, hashPixels(bitmap) + "_" + quality + getExtension(format));
+        if (file.exists()) { // 相同的图片已经保存过，只更新使用时间
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                Log.w(TAG, "touch failed: " + file);
+            }
+            return Uri.fromFile(file);
+        }
+        File tmpFile = new File(mDirectory, file.getName() + TMP_SUFFIX);
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tmpFile);
+            boolean compressed = bitmap.compress(format, quality, out);
+            out.close();
+            out = null;
+            if (!compressed || !tmpFile.renameTo(file)) {
+                throw new IOException("write failed: " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "save share image failed", e);
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // ignore
+                }
+            }
+            deleteFile(tmpFile);
+            return null;
+        }
+        trimToSize(file);
+        return Uri.fromFile(file);
+    }
+
+    /**
+     * 按修改时间从旧到新删除，直到总大小不超过上限；刚保存的文件不会被删除
+     */
+    private void trimToSize(File keep) {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        long maxBytes = mMaxBytes;
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (file.equals(keep)) {
+                continue;
+            }
+            total -= file.length();
+            deleteFile(file);
+        }
+    }
+
+    /**
+     * 逐行读取像素计算MD5，不需要复制整张图片的像素；宽高和格式也参与计算
+     */
+    private static String hashPixels(Bitmap bitmap) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        digest.update((width + "x" + height + ":" + bitmap.getConfig()).getBytes());
+        int[] row = new int[width];
+        byte[] rowBytes = new byte[width * 4];
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0, i = 0; x < width; x++) {
+                int pixel = row[x];
+                rowBytes[i++] = (byte) (pixel >>> 24);
+                rowBytes[i++] = (byte) (pixel >>> 16);
+                rowBytes[i++] = (byte) (pixel >>> 8);
+                rowBytes[i++] = (byte) pixel;
+            }
+            digest.update(rowBytes);
+        }
+        byte[] bytes = digest.digest();
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static String getExtension(Bitmap.CompressFormat format) {
+        if (format == Bitmap.CompressFormat.PNG) {
+            return ".png";
+        }
+        if (format == Bitmap.CompressFormat.WEBP) {
+            return ".webp";
+        }
+        return ".jpg";
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "delete failed: " + file);
+        }
+    }
+}
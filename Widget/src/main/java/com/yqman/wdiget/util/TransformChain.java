@@ -0,0 +1,245 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.support.annotation.NonNull;
+
+/**
+ * 依次执行的一组Bitmap变换（裁剪、缩放、圆形、圆角），不可变，可以在多个请求之间共用
+ * 通过{@link Builder}创建，{@link #getKey()}相同的两个变换链结果也相同，用于合并相同的请求
+ */
+public final class TransformChain {
+    private final List<Operation> mOperations;
+    private final String mKey;
+
+    private TransformChain(List<Operation> operations) {
+        mOperations = Collections.unmodifiableList(operations);
+        StringBuilder key = new StringBuilder();
+        for (Operation operation : operations) {
+            key.append(operation.getKey()).append('|');
+        }
+        mKey = key.toString();
+    }
+
+    /**
+     * 唯一描述这一组变换的字符串
+     */
+    @NonNull
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * 在当前线程依次执行所有变换，中间结果放回{@link BitmapPool}，原图不会被修改或者回收
+     * @param canceled 每一步之前检查，返回true时停止并返回null；可以为null
+     */
+    Bitmap apply(@NonNull Bitmap source, CancelSignal canceled) {
+        Bitmap current = source;
+        for (Operation operation : mOperations) {
+            if (canceled != null && canceled.isCanceled()) {
+                recycleIntermediate(current, source);
+                return null;
+            }
+            Bitmap next = operation.apply(current);
+            if (next != current) {
+                recycleIntermediate(current, source);
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    private static void recycleIntermediate(Bitmap bitmap, Bitmap source) {
+        if (bitmap != source) {
+            BitmapPool.getInstance().put(bitmap);
+        }
+    }
+
+    interface CancelSignal {
+        boolean isCanceled();
+    }
+
+    public static final class Builder {
+        private final ArrayList<Operation> mOperations = new ArrayList<>();
+
+        /**
+         * 按指定的宽高比例居中裁剪，使其不至于被拉伸后变形
+         */
+        public Builder trim(int width, int height) {
+            mOperations.add(new TrimOperation(width, height));
+            return this;
+        }
+
+        /**
+         * 拉伸到指定的宽高，需要保持比例时先调用{@link #trim(int, int)}
+         */
+        public Builder scale(int width, int height) {
+            mOperations.add(new ScaleOperation(width, height));
+            return this;
+        }
+
+        /**
+         * 等比例缩放、居中裁剪为指定直径的圆形
+         */
+        public Builder circleCrop(int diameter) {
+            mOperations.add(new CircleCropOperation(diameter));
+            return this;
+        }
+
+        /**
+         * 尺寸不变，四个角裁剪为指定半径的圆角
+         */
+        public Builder roundCorners(float radius) {
+            mOperations.add(new RoundCornersOperation(radius));
+            return this;
+        }
+
+        public TransformChain build() {
+            return new TransformChain(new ArrayList<>(mOperations));
+        }
+    }
+
+    private interface Operation {
+        Bitmap apply(Bitmap bitmap);
+
+        String getKey();
+    }
+
+    private static final class TrimOperation implements Operation {
+        private final int mWidth;
+        private final int mHeight;
+
+        TrimOperation(int width, int height) {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("invalid trim size " + width + "x" + height);
+            }
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public Bitmap apply(Bitmap bitmap) {
+            return trim(bitmap, mWidth, mHeight);
+        }
+
+        @Override
+        public String getKey() {
+            return "trim:" + mWidth + "x" + mHeight;
+        }
+    }
+
+    private static final class ScaleOperation implements Operation {
+        private final int mWidth;
+        private final int mHeight;
+
+        ScaleOperation(int width, int height) {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("invalid scale size " + width + "x" + height);
+            }
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public Bitmap apply(Bitmap bitmap) {
+            return Bitmap.createScaledBitmap(bitmap, mWidth, mHeight, true);
+        }
+
+        @Override
+        public String getKey() {
+            return "scale:" + mWidth + "x" + mHeight;
+        }
+    }
+
+    private static final class CircleCropOperation implements Operation {
+        private final int mDiameter;
+
+        CircleCropOperation(int diameter) {
+            if (diameter <= 0) {
+                throw new IllegalArgumentException("invalid diameter " + diameter);
+            }
+            mDiameter = diameter;
+        }
+
+        @Override
+        public Bitmap apply(Bitmap bitmap) {
+            return CircleCropCache.cropCircle(bitmap, mDiameter);
+        }
+
+        @Override
+        public String getKey() {
+            return "circle:" + mDiameter;
+        }
+    }
+
+    private static final class RoundCornersOperation implements Operation {
+        private final float mRadius;
+
+        RoundCornersOperation(float radius) {
+            if (radius < 0) {
+                throw new IllegalArgumentException("invalid radius " + radius);
+            }
+            mRadius = radius;
+        }
+
+        @Override
+        public Bitmap apply(Bitmap bitmap) {
+            Bitmap output = BitmapPool.getInstance().get(bitmap.getWidth(), bitmap.getHeight(),
+                    Bitmap.Config.ARGB_8888);
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+            paint.setShader(new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+            new Canvas(output).drawRoundRect(new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight()),
+                    mRadius, mRadius, paint);
+            return output;
+        }
+
+        @Override
+        public String getKey() {
+            return "round:" + mRadius;
+        }
+    }
+
+    /**
+     * 按指定的宽高比例居中裁剪，比例相同时返回原图
+     */
+    static Bitmap trim(Bitmap bitmap, int width, int height) {
+        int bt_height = bitmap.getHeight();
+        int bt_width = bitmap.getWidth();
+        int bt_widthStart = 0;
+        int bt_heightStart = 0;
+        float scale = (float) width / height;
+        float scaleTmp = (float) bt_width / bt_height;
+        if (scaleTmp > scale) {  //Bitmap的宽度超标，需要裁剪，取中间部分
+            int tmp = (int) (scale * bt_height);
+            bt_widthStart = (bt_width - tmp) / 2;
+            bt_width = tmp;
+        } else { //Bitmap的高度超标，需要裁剪，取中间部分
+            int tmp = (int) (bt_width / scale);
+            bt_heightStart = (bt_height - tmp) / 2;
+            bt_height = tmp;
+        }
+        return Bitmap.createBitmap(bitmap, bt_widthStart, bt_heightStart, bt_width, bt_height);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+
+import org.junit.Test;
+
+public class DateRangeTableTest {
+
+    @Test
+    public void isLeapYear() {
+        assertFalse(DateRangeTable.isLeapYear(1900)); // 整百年不是闰年
+        assertTrue(DateRangeTable.isLeapYear(2000)); // 整四百年是闰年
+        assertTrue(DateRangeTable.isLeapYear(2024));
+        assertFalse(DateRangeTable.isLeapYear(2023));
+    }
+
+    @Test
+    public void daysInFebruary() {
+        DateRangeTable table = DateRangeTable.ofYears(1900, 2024);
+        assertEquals(28, table.getDaysInMonth(1900, 2));
+        assertEquals(29, table.getDaysInMonth(2000, 2));
+        assertEquals(29, table.getDaysInMonth(2024, 2));
+        assertEquals(28, table.getDaysInMonth(2023, 2));
+        // 范围外的年份直接计算
+        assertEquals(29, table.getDaysInMonth(2400, 2));
+        assertEquals(28, table.getDaysInMonth(1800, 2));
+    }
+
+    @Test
+    public void daysInMonthMatchesCalendar() {
+        DateRangeTable table = DateRangeTable.ofYears(1900, 2100);
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        for (int year = 1900; year <= 2100; year++) {
+            for (int month = 1; month <= 12; month++) {
+                calendar.set(year, month - 1, 1);
+                assertEquals(year + "-" + month, calendar.getActualMaximum(Calendar.DAY_OF_MONTH),
+                        table.getDaysInMonth(year, month));
+            }
+        }
+    }
+
+    @Test
+    public void startBoundary() {
+        DateRangeTable table = new DateRangeTable(2019, 3, 15, 2024, 2, 10);
+        assertEquals(3, table.getMinMonth(2019));
+        assertEquals(1, table.getMinMonth(2020));
+        assertEquals(15, table.getMinDay(2019, 3));
+        assertEquals(1, table.getMinDay(2019, 4));
+        assertEquals(1, table.getMinDay(2020, 3));
+    }
+
+    @Test
+    public void endBoundary() {
+        DateRangeTable table = new DateRangeTable(2019, 3, 15, 2024, 2, 10);
+        assertEquals(2, table.getMaxMonth(2024));
+        assertEquals(12, table.getMaxMonth(2023));
+        assertEquals(10, table.getMaxDay(2024, 2));
+        assertEquals(31, table.getMaxDay(2024, 1));
+        assertEquals(28, table.getMaxDay(2023, 2));
+    }
+
+    @Test
+    public void getMaxDayAtEdges() {
+        // 结束日期大于当月天数时取当月天数
+        DateRangeTable table = new DateRangeTable(1900, 1, 1, 2024, 2, 31);
+        assertEquals(29, table.getMaxDay(2024, 2));
+        assertEquals(28, table.getMaxDay(1900, 2));
+        assertEquals(29, table.getMaxDay(2000, 2));
+        assertEquals(31, table.getMaxDay(1900, 12));
+        assertEquals(30, table.getMaxDay(2023, 11));
+    }
+
+    @Test
+    public void clampMonth() {
+        DateRangeTable table = new DateRangeTable(2019, 3, 15, 2024, 2, 10);
+        assertEquals(3, table.clampMonth(2019, 1));
+        assertEquals(12, table.clampMonth(2019, 12));
+        assertEquals(1, table.clampMonth(2020, 1));
+        assertEquals(12, table.clampMonth(2020, 12));
+        assertEquals(2, table.clampMonth(2024, 12));
+        assertEquals(1, table.clampMonth(2024, 0));
+    }
+
+    @Test
+    public void singleMonthRange() {
+        DateRangeTable table = new DateRangeTable(2020, 5, 10, 2020, 5, 20);
+        assertEquals(5, table.clampMonth(2020, 1));
+        assertEquals(5, table.clampMonth(2020, 12));
+        assertEquals(10, table.getMinDay(2020, 5));
+        assertEquals(20, table.getMaxDay(2020, 5));
+    }
+
+    @Test
+    public void clampYear() {
+        DateRangeTable table = DateRangeTable.ofYears(1970, 2100);
+        assertEquals(1970, table.clampYear(1900));
+        assertEquals(2000, table.clampYear(2000));
+        assertEquals(2100, table.clampYear(2200));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void startAfterEnd() {
+        new DateRangeTable(2020, 5, 21, 2020, 5, 20);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PendingGestureTest {
+    private static final float DELTA = 1e-3f;
+
+    @Test
+    public void emptyGestureDoesNothing() {
+        PendingGesture gesture = new PendingGesture();
+        assertTrue(gesture.isEmpty());
+        ZoomTransform transform = newZoomed();
+        gesture.applyTo(transform, 0);
+        assertEquals(2, transform.getRatio(), DELTA);
+        assertEquals(-500, transform.getTranslateX(), DELTA);
+    }
+
+    @Test
+    public void translationsAccumulate() {
+        PendingGesture gesture = new PendingGesture();
+        gesture.translate(10, 0);
+        gesture.translate(5, -3);
+        assertFalse(gesture.isEmpty());
+        ZoomTransform transform = newZoomed();
+        gesture.applyTo(transform, 0);
+        assertEquals(-485, transform.getTranslateX(), DELTA);
+        assertEquals(-503, transform.getTranslateY(), DELTA);
+        assertTrue(gesture.isEmpty());
+    }
+
+    @Test
+    public void batchedEqualsStepByStep() {
+        PendingGesture gesture = new PendingGesture();
+        ZoomTransform expected = newZoomed();
+        gesture.translate(-20, -10);
+        expected.translateBy(-20, -10, 0);
+        gesture.zoom(1.2f, 400, 300);
+        expected.zoomBy(1.2f, 400, 300);
+        gesture.translate(15, 5);
+        expected.translateBy(15, 5, 0);
+        gesture.zoom(1.1f, 420, 310);
+        expected.zoomBy(1.1f, 420, 310);
+
+        ZoomTransform transform = newZoomed();
+        gesture.applyTo(transform, 0);
+        assertEquals(expected.getRatio(), transform.getRatio(), DELTA);
+        assertEquals(expected.getTranslateX(), transform.getTranslateX(), DELTA);
+        assertEquals(expected.getTranslateY(), transform.getTranslateY(), DELTA);
+    }
+
+    @Test
+    public void zoomIsClampedByTransform() {
+        PendingGesture gesture = new PendingGesture();
+        gesture.zoom(10, 500, 500);
+        ZoomTransform transform = newZoomed();
+        gesture.applyTo(transform, 0);
+        assertEquals(transform.getMaxRatio(), transform.getRatio(), DELTA);
+        assertFalse(transform.isOverscrolled());
+    }
+
+    @Test
+    public void resetDiscardsChanges() {
+        PendingGesture gesture = new PendingGesture();
+        gesture.zoom(2, 0, 0);
+        gesture.translate(100, 100);
+        gesture.reset();
+        assertTrue(gesture.isEmpty());
+        ZoomTransform transform = newZoomed();
+        gesture.applyTo(transform, 0);
+        assertEquals(2, transform.getRatio(), DELTA);
+        assertEquals(-500, transform.getTranslateY(), DELTA);
+    }
+
+    /**
+     * 1000x1000的View和图片，以中心放大2倍
+     */
+    private static ZoomTransform newZoomed() {
+        ZoomTransform transform = new ZoomTransform();
+        transform.setSize(1000, 1000, 1000, 1000);
+        transform.zoomTo(2, 500, 500);
+        return transform;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yqman.wdiget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ZoomTransformTest {
+    private static final float DELTA = 1e-3f;
+
+    @Test
+    public void notReadyBeforeSize() {
+        ZoomTransform transform = new ZoomTransform();
+        assertFalse(transform.isReady());
+        transform.reset();
+        assertEquals(1, transform.getRatio(), DELTA);
+    }
+
+    @Test
+    public void resetFitsAndCenters() {
+        ZoomTransform transform = new ZoomTransform();
+        assertTrue(transform.setSize(1000, 500, 2000, 2000));
+        assertTrue(transform.isReady());
+        assertEquals(0.25f, transform.getRatio(), DELTA);
+        assertEquals(250, transform.getTranslateX(), DELTA);
+        assertEquals(0, transform.getTranslateY(), DELTA);
+        assertFalse(transform.isZoomed());
+        // 尺寸不变时不恢复初始状态
+        transform.zoomTo(0.5f, 500, 250);
+        assertFalse(transform.setSize(1000, 500, 2000, 2000));
+        assertEquals(0.5f, transform.getRatio(), DELTA);
+    }
+
+    @Test
+    public void zoomKeepsFocusFixed() {
+        ZoomTransform transform = newSquare();
+        transform.zoomBy(2, 300, 400);
+        assertEquals(2, transform.getRatio(), DELTA);
+        // 焦点下的原图坐标保持不变
+        assertEquals(300, (300 - transform.getTranslateX()) / transform.getRatio(), DELTA);
+        assertEquals(400, (400 - transform.getTranslateY()) / transform.getRatio(), DELTA);
+        assertTrue(transform.isZoomed());
+    }
+
+    @Test
+    public void zoomIsClamped() {
+        ZoomTransform transform = newSquare();
+        transform.zoomTo(100, 500, 500);
+        assertEquals(ZoomTransform.MAX_ZOOM_MULTIPLE, transform.getRatio(), DELTA);
+        transform.zoomTo(0.01f, 0, 0);
+        assertEquals(1, transform.getRatio(), DELTA);
+        // 缩小到初始比例后重新居中
+        assertEquals(0, transform.getTranslateX(), DELTA);
+        assertEquals(0, transform.getTranslateY(), DELTA);
+    }
+
+    @Test
+    public void zoomIsConstrainedToEdges() {
+        ZoomTransform transform = newSquare();
+        transform.zoomBy(2, 0, 0); // 以左上角为中心放大，偏移值不能大于0
+        assertEquals(0, transform.getTranslateX(), DELTA);
+        assertEquals(0, transform.getTranslateY(), DELTA);
+        transform.zoomBy(1.5f, 1000, 1000); // 没有越界时不修正，焦点下的内容不动
+        assertEquals(1000 - 1000 * 1.5f, transform.getTranslateX(), DELTA);
+        transform.zoomTo(1, 1000, 1000); // 缩小时不能露出图片以外的区域
+        assertEquals(0, transform.getTranslateX(), DELTA);
+        assertFalse(transform.isOverscrolled());
+    }
+
+    @Test
+    public void translateWithoutOverscroll() {
+        ZoomTransform transform = newSquare();
+        transform.zoomTo(2, 500, 500);
+        assertEquals(-500, transform.getTranslateX(), DELTA);
+        transform.translateBy(100, -100, 0);
+        assertEquals(-400, transform.getTranslateX(), DELTA);
+        assertEquals(-600, transform.getTranslateY(), DELTA);
+        transform.translateBy(1000, -1000, 0);
+        assertEquals(0, transform.getTranslateX(), DELTA);
+        assertEquals(-1000, transform.getTranslateY(), DELTA);
+        assertFalse(transform.isOverscrolled());
+    }
+
+    @Test
+    public void overscrollHasResistanceAndLimit() {
+        ZoomTransform transform = newSquare();
+        transform.zoomTo(2, 0, 0);
+        transform.translateBy(50, 0, 100);
+        assertEquals(50, transform.getTranslateX(), DELTA);
+        assertTrue(transform.isOverscrolled());
+        transform.translateBy(50, 0, 100); // 已经越界50，阻力减半
+        assertEquals(75, transform.getTranslateX(), DELTA);
+        transform.translateBy(10000, 0, 100);
+        assertEquals(100, transform.getTranslateX(), DELTA);
+        transform.translateBy(-30, 0, 100); // 向内拖动没有阻力
+        assertEquals(70, transform.getTranslateX(), DELTA);
+        transform.constrain();
+        assertEquals(0, transform.getTranslateX(), DELTA);
+        assertFalse(transform.isOverscrolled());
+    }
+
+    @Test
+    public void narrowImageStaysCentered() {
+        ZoomTransform transform = new ZoomTransform();
+        transform.setSize(1000, 1000, 500, 1000);
+        assertEquals(250, transform.getTranslateX(), DELTA);
+        transform.translateBy(100, 0, 50);
+        transform.constrain();
+        assertEquals(250, transform.getTranslateX(), DELTA);
+    }
+
+    @Test
+    public void replaceImageKeepsScreenPosition() {
+        ZoomTransform transform = new ZoomTransform();
+        transform.setSize(1000, 1000, 100, 100); // 缩略图
+        transform.zoomTo(20, 500, 500);
+        float screenX = 50 * transform.getRatio() + transform.getTranslateX();
+        float screenY = 50 * transform.getRatio() + transform.getTranslateY();
+        transform.replaceImage(1000, 1000); // 原图
+        assertEquals(2, transform.getRatio(), DELTA);
+        assertEquals(1, transform.getMinRatio(), DELTA);
+        assertEquals(screenX, 500 * transform.getRatio() + transform.getTranslateX(), DELTA);
+        assertEquals(screenY, 500 * transform.getRatio() + transform.getTranslateY(), DELTA);
+    }
+
+    @Test
+    public void replaceImageBeforeSizeResets() {
+        ZoomTransform transform = new ZoomTransform();
+        transform.replaceImage(100, 100);
+        assertFalse(transform.isReady());
+        assertEquals(1, transform.getRatio(), DELTA);
+    }
+
+    @Test
+    public void interpolate() {
+        ZoomTransform from = newSquare();
+        ZoomTransform to = newSquare();
+        to.zoomTo(3, 0, 0);
+        ZoomTransform transform = new ZoomTransform();
+        transform.set(from);
+        transform.interpolate(from, to, 0.5f);
+        assertEquals(2, transform.getRatio(), DELTA);
+        transform.interpolate(from, to, 1);
+        assertEquals(to.getRatio(), transform.getRatio(), DELTA);
+        assertEquals(to.getTranslateX(), transform.getTranslateX(), DELTA);
+    }
+
+    private static ZoomTransform newSquare() {
+        ZoomTransform transform = new ZoomTransform();
+        transform.setSize(1000, 1000, 1000, 1000);
+        return transform;
+    }
+}